@@ -0,0 +1,120 @@
+package com.github.fcofdez.s3fs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing a directory, walking a tree and finding files with a glob, over {@code DIRECTORIES} directories of
+ * {@code filesPerDirectory} small objects each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ListBenchmark {
+    private static final String BUCKET = "list-benchmark";
+    private static final int DIRECTORIES = 100;
+
+    @Param({"100", "2500"})
+    public int filesPerDirectory;
+
+    @Param({"0", "10"})
+    public long latencyMillis;
+
+    @Param({"1", "8"})
+    public int listingParallelism;
+
+    private LocalS3Server server;
+    private S3FileSystem fs;
+    private Path root;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalS3Server(latencyMillis, 0);
+        byte[] data = new byte[16];
+        for (int d = 0; d < DIRECTORIES; d++) {
+            for (int f = 0; f < filesPerDirectory; f++) {
+                server.put(BUCKET, String.format("data/dir-%03d/part-%05d.gz", d, f), data);
+            }
+        }
+
+        Map<String, Object> env = server.env();
+        env.put(S3FSSettings.LISTING_PARALLELISM, listingParallelism);
+        fs = (S3FileSystem) FileSystems.newFileSystem(URI.create("s3://" + BUCKET + "/"), env);
+        root = fs.getPath("/data");
+        directory = fs.getPath("/data/dir-042");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fs.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int listDirectory() throws IOException {
+        int entries = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path ignored : stream) {
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Counts every file under the root, the way recursive tools walk directories.
+     */
+    @Benchmark
+    public int walk() throws IOException {
+        return walk(root);
+    }
+
+    private static int walk(Path dir) throws IOException {
+        int files = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                files += Files.isDirectory(entry) ? walk(entry) : 1;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Matches a tenth of the directories, only their keys are listed.
+     */
+    @Benchmark
+    public int findGlob() throws IOException {
+        int matches = 0;
+        try (DirectoryStream<Path> stream = fs.find(root, "dir-04*/part-0000*.gz")) {
+            for (Path ignored : stream) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
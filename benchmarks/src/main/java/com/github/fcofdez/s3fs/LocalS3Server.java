@@ -0,0 +1,333 @@
+package com.github.fcofdez.s3fs;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process stand-in for S3, serving objects held in memory over HTTP with path style addressing, enough of the
+ * API for reads and listings: HeadObject, ranged GetObject and ListObjectsV2. Objects are added with
+ * {@link #put(String, String, byte[])}, requests aren't authenticated.
+ *
+ * Every response waits {@code latencyMillis} before its headers, standing for the time to first byte, and bodies are
+ * sent no faster than {@code bytesPerSecond} per request, so benchmarks see the shape of a remote store while staying
+ * reproducible offline.
+ */
+final class LocalS3Server implements AutoCloseable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAX_KEYS = 1000;
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final long latencyMillis;
+    private final long bytesPerSecond;
+    private final ConcurrentMap<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts a server on a free loopback port. A {@code bytesPerSecond} of 0 doesn't limit bandwidth.
+     */
+    LocalS3Server(long latencyMillis, long bytesPerSecond) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecond = bytesPerSecond;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-s3");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    URI endpoint() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * Settings opening a filesystem on this server, to which others can be added before passing them to
+     * {@link java.nio.file.FileSystems#newFileSystem(URI, Map)}.
+     */
+    Map<String, Object> env() {
+        Map<String, Object> env = new HashMap<>();
+        env.put(S3FSSettings.ENDPOINT, endpoint().toString());
+        env.put(S3FSSettings.PATH_STYLE_ACCESS, true);
+        env.put(S3FSSettings.REGION, "us-east-1");
+        env.put(S3FSSettings.ACCESS_KEY, "benchmark");
+        env.put(S3FSSettings.SECRET_KEY, "benchmark");
+        return env;
+    }
+
+    void put(String bucket, String key, byte[] data) {
+        buckets.computeIfAbsent(bucket, b -> new ConcurrentSkipListMap<>()).put(key, new StoredObject(data));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (latencyMillis > 0)
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+
+            String path = decode(exchange.getRequestURI().getRawPath());
+            int slash = path.indexOf('/', 1);
+            String bucket = slash == -1 ? path.substring(1) : path.substring(1, slash);
+            String key = slash == -1 ? "" : path.substring(slash + 1);
+            NavigableMap<String, StoredObject> objects = buckets.get(bucket);
+            String method = exchange.getRequestMethod();
+
+            if (objects == null) {
+                sendError(exchange, 404, "NoSuchBucket", bucket);
+            } else if (!method.equals("GET") && !method.equals("HEAD")) {
+                sendError(exchange, 501, "NotImplemented", method);
+            } else if (key.isEmpty()) {
+                list(exchange, bucket, objects, query(exchange.getRequestURI().getRawQuery()));
+            } else {
+                StoredObject object = objects.get(key);
+                if (object == null)
+                    sendError(exchange, 404, "NoSuchKey", key);
+                else
+                    get(exchange, object, method.equals("HEAD"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // the client went away, as channels closed before reading to the end do
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void get(HttpExchange exchange, StoredObject object, boolean head) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", object.eTag);
+        headers.set("Last-Modified", HTTP_DATE.format(object.lastModified));
+        headers.set("Content-Type", "application/octet-stream");
+        headers.set("Accept-Ranges", "bytes");
+
+        int length = object.data.length;
+        if (head) {
+            // a HEAD response declares the length of the body it doesn't send
+            headers.set("Content-Length", Integer.toString(length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        int start = 0;
+        int end = length;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            if (bounds[0].isEmpty()) {
+                start = Math.max(0, length - Integer.parseInt(bounds[1]));
+            } else {
+                start = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty())
+                    end = (int) Math.min(length, Long.parseLong(bounds[1]) + 1);
+            }
+            if (start >= length) {
+                headers.set("Content-Range", "bytes */" + length);
+                sendError(exchange, 416, "InvalidRange", range);
+                return;
+            }
+            headers.set("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+            status = 206;
+        }
+
+        exchange.sendResponseHeaders(status, end == start ? -1 : end - start);
+        try (OutputStream out = exchange.getResponseBody()) {
+            send(out, object.data, start, end - start);
+        }
+    }
+
+    /**
+     * Writes in chunks, pausing whenever ahead of the bandwidth limit.
+     */
+    private void send(OutputStream out, byte[] data, int offset, int length) throws IOException {
+        long startNanos = System.nanoTime();
+        int sent = 0;
+        while (sent < length) {
+            int chunk = Math.min(CHUNK_SIZE, length - sent);
+            out.write(data, offset + sent, chunk);
+            sent += chunk;
+            if (bytesPerSecond > 0) {
+                long wait = startNanos + sent * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond - System.nanoTime();
+                if (wait > 0)
+                    LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    private void list(HttpExchange exchange, String bucket, NavigableMap<String, StoredObject> objects,
+                      Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+        if (delimiter != null && delimiter.isEmpty())
+            delimiter = null;
+        int maxKeys = query.containsKey("max-keys") ? Integer.parseInt(query.get("max-keys")) : DEFAULT_MAX_KEYS;
+        String token = query.get("continuation-token");
+        String after = token != null ? token : query.get("start-after");
+
+        NavigableMap<String, StoredObject> candidates = after == null || after.compareTo(prefix) < 0
+                                                        ? objects.tailMap(prefix, true)
+                                                        : objects.tailMap(after, false);
+        // continuing after a common prefix skips the keys under it
+        String lastPrefix = token != null && delimiter != null && token.endsWith(delimiter) ? token : null;
+        StringBuilder contents = new StringBuilder();
+        StringBuilder prefixes = new StringBuilder();
+        String last = null;
+        int count = 0;
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix))
+                break;
+            if (lastPrefix != null && key.startsWith(lastPrefix))
+                continue;
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+
+            int end = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            if (end != -1) {
+                lastPrefix = key.substring(0, end + delimiter.length());
+                prefixes.append("<CommonPrefixes><Prefix>").append(escape(lastPrefix)).append("</Prefix></CommonPrefixes>");
+                last = lastPrefix;
+            } else {
+                StoredObject object = entry.getValue();
+                contents.append("<Contents><Key>").append(escape(key))
+                        .append("</Key><LastModified>").append(object.lastModified)
+                        .append("</LastModified><ETag>").append(escape(object.eTag))
+                        .append("</ETag><Size>").append(object.data.length)
+                        .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+                last = key;
+            }
+            count++;
+        }
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(escape(bucket)).append("</Name>")
+                .append("<Prefix>").append(escape(prefix)).append("</Prefix>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (delimiter != null)
+            xml.append("<Delimiter>").append(escape(delimiter)).append("</Delimiter>");
+        if (token != null)
+            xml.append("<ContinuationToken>").append(escape(token)).append("</ContinuationToken>");
+        if (truncated)
+            xml.append("<NextContinuationToken>").append(escape(last)).append("</NextContinuationToken>");
+        xml.append(contents).append(prefixes).append("</ListBucketResult>");
+        sendXml(exchange, 200, xml.toString());
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String resource) throws IOException {
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        sendXml(exchange, status, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code
+                                  + "</Code><Message>" + code + "</Message><Resource>" + escape(resource)
+                                  + "</Resource></Error>");
+    }
+
+    private void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            send(out, body, 0, body.length);
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null)
+            return query;
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals == -1)
+                query.put(decode(parameter), "");
+            else
+                query.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String encoded) throws UnsupportedEncodingException {
+        // the SDK encodes spaces as %20, a + is a +
+        return URLDecoder.decode(encoded.replace("+", "%2B"), "UTF-8");
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': escaped.append("&amp;"); break;
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '"': escaped.append("&quot;"); break;
+                case '\'': escaped.append("&apos;"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static final class StoredObject {
+        final byte[] data;
+        final String eTag;
+        final Instant lastModified = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        StoredObject(byte[] data) {
+            this.data = data;
+            this.eTag = '"' + md5(data) + '"';
+        }
+
+        private static String md5(byte[] data) {
+            try {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : MessageDigest.getInstance("MD5").digest(data)) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.fcofdez.s3fs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UnixPath} and {@link S3Path} operations, which run once per entry in listings and walks. No request is made,
+ * the server only gives the filesystem somewhere to point at.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathBenchmark {
+    private static final String DEEP = "/warehouse/events/year=2026/month=10/day=18/hour=07/part-00042.parquet";
+    private static final String UNNORMALIZED = "/warehouse/events/./year=2026//month=10/../month=11/day=18/part-0.parquet";
+
+    private LocalS3Server server;
+    private FileSystem fs;
+    private UnixPath deep;
+    private UnixPath table;
+    private Path base;
+    private Path file;
+    private Path sibling;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalS3Server(0, 0);
+        server.put("path-benchmark", "placeholder", new byte[0]);
+        fs = FileSystems.newFileSystem(URI.create("s3://path-benchmark/"), server.env());
+        deep = UnixPath.createPath(DEEP);
+        table = UnixPath.createPath("/warehouse/events");
+        base = fs.getPath("/warehouse/events");
+        file = fs.getPath(DEEP);
+        sibling = fs.getPath("/warehouse/events/year=2026/month=10/day=18/hour=07/part-00043.parquet");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fs.close();
+        server.close();
+    }
+
+    /**
+     * Includes locating the names of a path seen for the first time.
+     */
+    @Benchmark
+    public int unixPathNameCount() {
+        return UnixPath.createPath(DEEP).getNameCount();
+    }
+
+    @Benchmark
+    public UnixPath unixPathFileName() {
+        return UnixPath.createPath(DEEP).getFileName();
+    }
+
+    @Benchmark
+    public UnixPath unixPathNormalize() {
+        return UnixPath.createPath(UNNORMALIZED).normalize();
+    }
+
+    @Benchmark
+    public UnixPath unixPathRelativize() {
+        return table.relativize(deep);
+    }
+
+    @Benchmark
+    public boolean unixPathStartsWith() {
+        return deep.startsWith(table);
+    }
+
+    @Benchmark
+    public Path s3PathResolve() {
+        return base.resolve("year=2026/month=10/day=18/hour=07/part-00042.parquet");
+    }
+
+    @Benchmark
+    public Path s3PathParent() {
+        return file.getParent();
+    }
+
+    @Benchmark
+    public void s3PathIterate(Blackhole blackhole) {
+        for (Path name : file) {
+            blackhole.consume(name);
+        }
+    }
+
+    @Benchmark
+    public int s3PathCompare() {
+        return file.compareTo(sibling);
+    }
+
+    /**
+     * Hashing a path fresh out of a listing, as putting it in a set does.
+     */
+    @Benchmark
+    public int s3PathHashCode() {
+        return fs.getPath(DEEP).hashCode();
+    }
+
+    @Benchmark
+    public URI s3PathToUri() {
+        return file.toUri();
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.fcofdez.s3fs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential and random reads through {@link S3SeekableByteChannel}, with the caller reading {@code bufferSize} bytes
+ * at a time. The block cache is disabled so every byte comes from the server.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReadBenchmark {
+    private static final String BUCKET = "read-benchmark";
+    private static final int OBJECT_SIZE = 16 * 1024 * 1024;
+    // random offsets are drawn from a fixed sequence so every run reads the same ranges
+    private static final int OFFSETS = 1024;
+
+    @Param({"4096", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    // 0 for unlimited, 100 MiB/s otherwise
+    @Param({"0", "104857600"})
+    public long bytesPerSecond;
+
+    private LocalS3Server server;
+    private FileSystem fs;
+    private Path object;
+    private ByteBuffer buffer;
+    private SeekableByteChannel randomChannel;
+    private long[] offsets;
+    private int nextOffset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalS3Server(latencyMillis, bytesPerSecond);
+        byte[] data = new byte[OBJECT_SIZE];
+        Random random = new Random(42);
+        random.nextBytes(data);
+        server.put(BUCKET, "object", data);
+
+        Map<String, Object> env = server.env();
+        env.put(S3FSSettings.CACHE_CAPACITY, 0);
+        fs = FileSystems.newFileSystem(URI.create("s3://" + BUCKET + "/"), env);
+        object = fs.getPath("/object");
+        buffer = ByteBuffer.allocate(bufferSize);
+
+        offsets = new long[OFFSETS];
+        for (int i = 0; i < OFFSETS; i++) {
+            offsets[i] = (long) (random.nextDouble() * (OBJECT_SIZE - bufferSize));
+        }
+        randomChannel = Files.newByteChannel(object);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        randomChannel.close();
+        fs.close();
+        server.close();
+    }
+
+    /**
+     * Reads the whole object front to back, bytes per second are the score times {@code OBJECT_SIZE}.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long sequentialRead() throws IOException {
+        long total = 0;
+        try (SeekableByteChannel channel = Files.newByteChannel(object)) {
+            int read;
+            while ((read = channel.read(clear(buffer))) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Reads {@code bufferSize} bytes at a random position of a channel kept open across calls.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int randomRead() throws IOException {
+        randomChannel.position(offsets[nextOffset++ % OFFSETS]);
+        ByteBuffer target = clear(buffer);
+        while (target.hasRemaining() && randomChannel.read(target) != -1) {
+            // read the whole buffer
+        }
+        return target.position();
+    }
+
+    private static ByteBuffer clear(ByteBuffer buffer) {
+        buffer.clear();
+        return buffer;
+    }
+}
@@ -0,0 +1,241 @@
+package com.github.fcofdez.s3fs;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Block cache shared by every channel of a {@link S3FileSystem}.
+ *
+ * Blocks are {@code blockSize} aligned ranges of an object version (bucket, key and ETag) kept in direct buffers.
+ * Eviction is a segmented LRU: new blocks enter a probation segment and are only promoted to the protected segment
+ * when read again, so a single large scan cannot flush the blocks that are actually hot.
+ *
+ * An optional {@link DiskBlockCache} sits underneath: blocks evicted from memory can still be served from local disk,
+ * including after a restart.
+ */
+public final class BlockCache {
+    // share of the capacity reserved for blocks that were hit at least once
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final int blockSize;
+    private final long capacity;
+    private final long protectedCapacity;
+    private final DiskBlockCache disk;
+    private final LinkedHashMap<BlockKey, ByteBuffer> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<BlockKey, ByteBuffer> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    BlockCache(int blockSize, long capacity, DiskBlockCache disk) {
+        this.blockSize = blockSize;
+        this.capacity = capacity;
+        this.disk = disk;
+        this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns a read-only view of the cached block positioned at 0, or {@code null} on a miss.
+     */
+    ByteBuffer get(BlockKey key) {
+        ByteBuffer block;
+        synchronized (this) {
+            block = protectedSegment.get(key);
+            if (block == null) {
+                block = probation.remove(key);
+                if (block != null) {
+                    probationBytes -= block.capacity();
+                    protectedSegment.put(key, block);
+                    protectedBytes += block.capacity();
+                    demoteOverflow();
+                }
+            }
+        }
+
+        if (block != null) {
+            hits.increment();
+            return block.asReadOnlyBuffer();
+        }
+
+        block = disk == null ? null : disk.get(key);
+        if (block == null) {
+            misses.increment();
+            return null;
+        }
+
+        diskHits.increment();
+        putInMemory(key, copyOf(block));
+        return block.asReadOnlyBuffer();
+    }
+
+    /**
+     * Caches the remaining bytes of {@code data} as {@code key}, copying them off-heap.
+     */
+    void put(BlockKey key, ByteBuffer data) {
+        synchronized (this) {
+            if (probation.containsKey(key) || protectedSegment.containsKey(key))
+                return;
+        }
+
+        ByteBuffer block = copyOf(data);
+        if (disk != null)
+            disk.put(key, block);
+        putInMemory(key, block);
+    }
+
+    /**
+     * Drops the blocks of {@code eTag}, a version of the object that turned out to be replaced. The disk tier drops its
+     * copies when they are next looked up for the current version.
+     */
+    synchronized void invalidate(String bucket, String key, String eTag) {
+        probationBytes -= removeVersion(probation, bucket, key, eTag);
+        protectedBytes -= removeVersion(protectedSegment, bucket, key, eTag);
+    }
+
+    private static long removeVersion(Map<BlockKey, ByteBuffer> segment, String bucket, String key, String eTag) {
+        long removed = 0;
+        for (Iterator<Map.Entry<BlockKey, ByteBuffer>> entries = segment.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<BlockKey, ByteBuffer> entry = entries.next();
+            BlockKey blockKey = entry.getKey();
+            if (blockKey.bucket.equals(bucket) && blockKey.key.equals(key) && blockKey.eTag.equals(eTag)) {
+                removed += entry.getValue().capacity();
+                entries.remove();
+            }
+        }
+        return removed;
+    }
+
+    private void putInMemory(BlockKey key, ByteBuffer block) {
+        if (block.capacity() > capacity)
+            return;
+
+        synchronized (this) {
+            if (probation.containsKey(key) || protectedSegment.containsKey(key))
+                return;
+
+            probation.put(key, block);
+            probationBytes += block.capacity();
+            evictOverflow();
+        }
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer data) {
+        ByteBuffer block = ByteBuffer.allocateDirect(data.remaining());
+        block.put(data.duplicate());
+        block.flip();
+        return block;
+    }
+
+    private void demoteOverflow() {
+        Iterator<Map.Entry<BlockKey, ByteBuffer>> lru = protectedSegment.entrySet().iterator();
+        while (protectedBytes > protectedCapacity && lru.hasNext()) {
+            Map.Entry<BlockKey, ByteBuffer> entry = lru.next();
+            lru.remove();
+            protectedBytes -= entry.getValue().capacity();
+            probation.put(entry.getKey(), entry.getValue());
+            probationBytes += entry.getValue().capacity();
+        }
+    }
+
+    private void evictOverflow() {
+        evictOverflow(probation.entrySet().iterator(), true);
+        evictOverflow(protectedSegment.entrySet().iterator(), false);
+    }
+
+    private void evictOverflow(Iterator<Map.Entry<BlockKey, ByteBuffer>> lru, boolean fromProbation) {
+        while (probationBytes + protectedBytes > capacity && lru.hasNext()) {
+            int released = lru.next().getValue().capacity();
+            lru.remove();
+            if (fromProbation) {
+                probationBytes -= released;
+            } else {
+                protectedBytes -= released;
+            }
+            // the buffer itself is left to the GC, channels may still be reading from it
+            evictions.increment();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Lookups that missed memory but were served by the disk tier.
+     */
+    public long getDiskHitCount() {
+        return diskHits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public synchronized long getUsedBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getDiskUsedBytes() {
+        return disk == null ? 0 : disk.getUsedBytes();
+    }
+
+    void close() {
+        if (disk != null)
+            disk.close();
+    }
+
+    static final class BlockKey {
+        final String bucket;
+        final String key;
+        final String eTag;
+        final long index;
+
+        BlockKey(String bucket, String key, String eTag, long index) {
+            this.bucket = bucket;
+            this.key = key;
+            this.eTag = eTag;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BlockKey blockKey = (BlockKey) o;
+            return index == blockKey.index &&
+                   Objects.equals(key, blockKey.key) &&
+                   Objects.equals(eTag, blockKey.eTag) &&
+                   Objects.equals(bucket, blockKey.bucket);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucket, key, eTag, index);
+        }
+
+        @Override
+        public String toString() {
+            return "s3://" + bucket + "/" + key + "@" + eTag + "#" + index;
+        }
+    }
+}
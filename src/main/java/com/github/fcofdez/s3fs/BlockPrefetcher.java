@@ -0,0 +1,119 @@
+package com.github.fcofdez.s3fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps up to {@code parallelism} ranged GETs of {@code blockSize} bytes in flight ahead of the reader and hands the
+ * completed blocks back in order. The block the reader holds counts as one of them, so together with it the memory
+ * taken is capped at {@code parallelism * blockSize} as long as the reader releases a block before asking for the next.
+ *
+ * Not thread safe, it's owned by a single channel.
+ */
+final class BlockPrefetcher {
+    private final RangeFetcher fetcher;
+    private final long size;
+    private final int blockSize;
+    private final int parallelism;
+    private final int alignment;
+    private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+    private long nextOffset = -1;
+
+    BlockPrefetcher(RangeFetcher fetcher, long size, int blockSize, int parallelism, int alignment) {
+        this.fetcher = fetcher;
+        this.size = size;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+        this.alignment = alignment;
+    }
+
+    /**
+     * Returns the block containing {@code position}, positioned at it, blocking until it arrives. Blocks before
+     * {@code position} are dropped; if {@code position} is not covered by what is in flight the pipeline restarts
+     * there, rounded down to {@code alignment}.
+     *
+     * The returned block is pooled, the caller owns it and hands it back through {@link #release(ByteBuffer)}.
+     */
+    ByteBuffer blockAt(long position) throws IOException {
+        while (!blocks.isEmpty() && blocks.peekFirst().end() <= position) {
+            drop(blocks.pollFirst());
+        }
+
+        if (blocks.isEmpty() || blocks.peekFirst().offset > position) {
+            cancel();
+            nextOffset = position - position % alignment;
+        }
+
+        fill();
+        // its slot is taken up until the reader releases it, the next call refills
+        Block head = blocks.pollFirst();
+
+        ByteBuffer data = RangeFetcher.await(head.data);
+        data.position((int) (position - head.offset));
+        return data;
+    }
+
+    void release(ByteBuffer block) {
+        fetcher.release(block);
+    }
+
+    /**
+     * Returns {@code true} if {@code position} falls inside a block that is already in flight or completed.
+     */
+    boolean contains(long position) {
+        for (Block block : blocks) {
+            if (block.offset <= position && position < block.end())
+                return true;
+        }
+        return false;
+    }
+
+    private void fill() {
+        while (blocks.size() < parallelism && nextOffset < size) {
+            int length = (int) Math.min(blockSize, size - nextOffset);
+            blocks.addLast(new Block(nextOffset, length, fetcher.fetch(nextOffset, length)));
+            nextOffset += length;
+        }
+    }
+
+    void cancel() {
+        for (Block block : blocks) {
+            drop(block);
+        }
+        blocks.clear();
+    }
+
+    /**
+     * Cancels {@code block}, recycling its buffer if it already arrived. Buffers of requests still running go back to
+     * the pool through the fetcher once the SDK is done writing into them.
+     */
+    private void drop(Block block) {
+        if (block.data.isDone() && !block.data.isCompletedExceptionally()) {
+            fetcher.release(block.data.join());
+        } else {
+            block.cancel();
+        }
+    }
+
+    private static final class Block {
+        final long offset;
+        final int length;
+        final CompletableFuture<ByteBuffer> data;
+
+        Block(long offset, int length, CompletableFuture<ByteBuffer> data) {
+            this.offset = offset;
+            this.length = length;
+            this.data = data;
+        }
+
+        long end() {
+            return offset + length;
+        }
+
+        void cancel() {
+            data.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The region of every bucket the provider opened a filesystem for, looked up once with HeadBucket so requests go
+ * straight to the bucket's region instead of being redirected there.
+ *
+ * S3 names the bucket's region in the {@value #REGION_HEADER} header of every HeadBucket response, including the 301
+ * sent from the wrong region and the 403 sent to credentials that may not access the bucket, which GetBucketLocation
+ * would refuse to answer. Only a region S3 stated is remembered.
+ */
+final class BucketRegions {
+    // where HeadBucket is asked, it answers for buckets of any region
+    static final Region LOOKUP_REGION = Region.US_EAST_1;
+    static final String REGION_HEADER = "x-amz-bucket-region";
+
+    private final ConcurrentMap<String, Region> regions = new ConcurrentHashMap<>();
+
+    /**
+     * The region of {@code bucket} if already known, {@code null} otherwise.
+     */
+    Region get(String bucket) {
+        return regions.get(bucket);
+    }
+
+    /**
+     * Looks up the region of {@code bucket} with {@code client}, a client of {@link #LOOKUP_REGION}. Falls back to
+     * {@link #LOOKUP_REGION}, without remembering it, if a 403 doesn't say where the bucket is; the next filesystem
+     * opened on the bucket asks again.
+     */
+    Region lookup(String bucket, S3Client client) {
+        Optional<String> header;
+        try {
+            header = regionHeader(client.headBucket(HeadBucketRequest.builder().bucket(bucket).build()).sdkHttpResponse());
+        } catch (S3Exception e) {
+            header = e.awsErrorDetails() == null ? Optional.empty() : regionHeader(e.awsErrorDetails().sdkHttpResponse());
+            if (!header.isPresent() && e.statusCode() != 403)
+                throw e;
+        }
+        if (!header.isPresent())
+            return LOOKUP_REGION;
+
+        regions.putIfAbsent(bucket, Region.of(header.get()));
+        return regions.get(bucket);
+    }
+
+    private static Optional<String> regionHeader(SdkHttpResponse response) {
+        return response == null ? Optional.empty() : response.firstMatchingHeader(REGION_HEADER);
+    }
+}
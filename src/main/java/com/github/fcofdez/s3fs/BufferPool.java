@@ -0,0 +1,277 @@
+package com.github.fcofdez.s3fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
+
+/**
+ * The buffers every channel of a filesystem stages data in, so readers and writers neither churn the heap nor pay for
+ * {@link ByteBuffer#allocateDirect(int)} on every fetch. Buffers the async client writes into or reads from are direct;
+ * those filled from an {@link java.io.InputStream} are heap buffers, since streams only speak {@code byte[]} and a
+ * direct buffer would cost an extra copy.
+ *
+ * Buffers are bucketed by power of two size classes starting at {@link #MIN_SIZE}. The pool never holds more than
+ * {@code capacity} bytes, counting both the buffers handed out and the idle ones kept for reuse. When a request can't be
+ * met, idle buffers of other size classes or kinds are dropped to make room and, failing that, the caller waits for a
+ * buffer to be released: {@link #acquire(int)} blocks and {@link #acquireAsync(int)} completes later. Waiters are
+ * served in arrival order.
+ *
+ * The capacity is a hard cap, nothing is ever allocated past it. A buffer held by a channel that isn't about to give
+ * it back, say a writer whose caller stopped half way through a part, can leave a blocking acquisition with nothing to
+ * wait for. So that fails with an {@link IOException} once the pool's maximum wait is over, rather than hang forever.
+ */
+public final class BufferPool {
+    static final int MIN_SIZE = 64 * 1024;
+    // long enough for in flight uploads and GETs to finish and hand their buffers back
+    static final long DEFAULT_MAX_WAIT_MILLIS = 30_000;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    // handed out by take() when room was reserved for a buffer that still has to be allocated
+    private static final ByteBuffer RESERVED = ByteBuffer.allocate(0);
+
+    private final long capacity;
+    private final long maxWaitMillis;
+    private final ArrayDeque<ByteBuffer>[] free;
+    private final ArrayDeque<ByteBuffer>[] freeHeap;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private final LongAdder waits = new LongAdder();
+    private long allocated;
+    private long idle;
+
+    BufferPool(long capacity) {
+        this(capacity, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    @SuppressWarnings("unchecked")
+    BufferPool(long capacity, long maxWaitMillis) {
+        checkArgument(capacity >= MIN_SIZE, "Buffer pool capacity must be >= %d but got %d", MIN_SIZE, capacity);
+        checkArgument(maxWaitMillis >= 0, "Buffer pool wait must be >= 0 but got %d", maxWaitMillis);
+        this.capacity = capacity;
+        this.maxWaitMillis = maxWaitMillis;
+        this.free = new ArrayDeque[Integer.SIZE - MIN_SHIFT];
+        this.freeHeap = new ArrayDeque[Integer.SIZE - MIN_SHIFT];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new ArrayDeque<>();
+            freeHeap[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Returns a cleared direct buffer with at least {@code size} bytes of capacity and its limit set to {@code size},
+     * blocking while the pool is exhausted.
+     *
+     * @throws IOException if no buffer is released within the pool's maximum wait
+     */
+    ByteBuffer acquire(int size) throws IOException {
+        return acquire(size, true);
+    }
+
+    /**
+     * Like {@link #acquire(int)}, handing out a heap buffer backed by an array at offset 0 unless {@code direct}.
+     */
+    ByteBuffer acquire(int size, boolean direct) throws IOException {
+        CompletableFuture<ByteBuffer> pending = acquireAsync(size, direct);
+        try {
+            return pending.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // granted in the meantime
+            if (!pending.cancel(false))
+                return pending.join();
+            throw new IOException(String.format("Buffer pool exhausted, no %d byte buffer was released within %d ms",
+                                                size, maxWaitMillis));
+        } catch (InterruptedException e) {
+            if (!pending.cancel(false))
+                release(pending.join());
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Like {@link #acquire(int)} but completes once a buffer is available instead of blocking. Cancelling the returned
+     * future gives up the place in the queue.
+     */
+    CompletableFuture<ByteBuffer> acquireAsync(int size) {
+        return acquireAsync(size, true);
+    }
+
+    private CompletableFuture<ByteBuffer> acquireAsync(int size, boolean direct) {
+        int sizeClass = sizeClass(size);
+        checkArgument(capacityOf(sizeClass) <= capacity, "Buffer of %d bytes exceeds the pool capacity of %d bytes",
+                      size, capacity);
+
+        ByteBuffer buffer;
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        synchronized (this) {
+            buffer = waiters.isEmpty() ? take(sizeClass, direct) : null;
+            if (buffer == null) {
+                waits.increment();
+                waiters.addLast(new Waiter(size, direct, result));
+            }
+        }
+
+        if (buffer == null) {
+            // a cancelled waiter at the head may have been holding back the ones behind it
+            result.whenComplete((ignored, error) -> {
+                if (result.isCancelled())
+                    grantWaiters();
+            });
+        } else {
+            result.complete(prepare(buffer, size, direct));
+        }
+        return result;
+    }
+
+    /**
+     * Hands {@code buffer} back. The caller must not touch it, or any view of it, afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        if (Integer.bitCount(buffer.capacity()) != 1 || buffer.capacity() < MIN_SIZE)
+            return;
+
+        synchronized (this) {
+            (buffer.isDirect() ? free : freeHeap)[sizeClass(buffer.capacity())].addLast(buffer);
+            idle += buffer.capacity();
+        }
+        grantWaiters();
+    }
+
+    private void grantWaiters() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            while (!waiters.isEmpty()) {
+                Waiter waiter = waiters.peekFirst();
+                if (waiter.future.isDone()) {
+                    waiters.pollFirst();
+                    continue;
+                }
+                ByteBuffer taken = take(sizeClass(waiter.size), waiter.direct);
+                if (taken == null)
+                    break;
+                waiters.pollFirst();
+                waiter.buffer = taken;
+                granted.add(waiter);
+            }
+        }
+
+        // outside the lock, completing runs whatever the waiter chained on the future
+        for (Waiter waiter : granted) {
+            ByteBuffer prepared = prepare(waiter.buffer, waiter.size, waiter.direct);
+            if (!waiter.future.complete(prepared))
+                release(prepared);
+        }
+    }
+
+    /**
+     * Takes an idle buffer of {@code sizeClass} and kind, or reserves room for a new one dropping other idle buffers if
+     * needed. Returns {@code null} if the buffers in use leave no room.
+     */
+    private ByteBuffer take(int sizeClass, boolean direct) {
+        ByteBuffer buffer = (direct ? free : freeHeap)[sizeClass].pollLast();
+        if (buffer != null) {
+            idle -= buffer.capacity();
+            return buffer;
+        }
+
+        int size = capacityOf(sizeClass);
+        dropIdle(direct ? freeHeap : free, size);
+        dropIdle(direct ? free : freeHeap, size);
+        if (allocated + size > capacity)
+            return null;
+
+        allocated += size;
+        return RESERVED;
+    }
+
+    /**
+     * Drops idle buffers, largest first, until {@code size} more bytes fit.
+     */
+    private void dropIdle(ArrayDeque<ByteBuffer>[] buffers, int size) {
+        for (int i = buffers.length - 1; i >= 0 && allocated + size > capacity; i--) {
+            while (!buffers[i].isEmpty() && allocated + size > capacity) {
+                ByteBuffer evicted = buffers[i].pollFirst();
+                idle -= evicted.capacity();
+                allocated -= evicted.capacity();
+            }
+        }
+    }
+
+    private static ByteBuffer prepare(ByteBuffer buffer, int size, boolean direct) {
+        if (buffer == RESERVED) {
+            int capacity = capacityOf(sizeClass(size));
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Bytes held by the pool, direct or heap, whether handed out or idle.
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocated;
+    }
+
+    /**
+     * Bytes currently handed out to channels.
+     */
+    public synchronized long getUsedBytes() {
+        return allocated - idle;
+    }
+
+    public synchronized int getWaitingCount() {
+        return waiters.size();
+    }
+
+    /**
+     * Number of acquisitions that found the pool exhausted and had to wait.
+     */
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    /**
+     * Capacity of the buffer handed out for a request of {@code size} bytes.
+     */
+    static long bufferCapacity(int size) {
+        return capacityOf(sizeClass(size));
+    }
+
+    static int sizeClass(int size) {
+        if (size <= MIN_SIZE)
+            return 0;
+        return Integer.SIZE - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private static int capacityOf(int sizeClass) {
+        return MIN_SIZE << sizeClass;
+    }
+
+    private static final class Waiter {
+        final int size;
+        final boolean direct;
+        final CompletableFuture<ByteBuffer> future;
+        ByteBuffer buffer;
+
+        Waiter(int size, boolean direct, CompletableFuture<ByteBuffer> future) {
+            this.size = size;
+            this.direct = direct;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes keys in DeleteObjects batches of up to {@link #MAX_BATCH_SIZE}, with at most
+ * {@link S3FSSettings#getDeleteParallelism()} batches in flight. Keys are fed one at a time as they are listed, so
+ * memory stays flat no matter how many there are, and {@link #finish()} waits for the last batch and reports which
+ * keys could not be deleted.
+ *
+ * Not thread safe, a delete is driven by a single thread.
+ */
+final class BulkDelete {
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private final S3FileSystem fileSystem;
+    private final S3AsyncClient s3Async;
+    private final int parallelism;
+    private final Semaphore permits;
+    private final Map<String, List<String>> batches = new HashMap<>();
+    private final LongAdder deleted = new LongAdder();
+    private final ConcurrentLinkedQueue<DeleteReport.Failure> failures = new ConcurrentLinkedQueue<>();
+
+    BulkDelete(S3FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+        this.s3Async = fileSystem.getS3AsyncClient();
+        this.parallelism = fileSystem.getSettings().getDeleteParallelism();
+        this.permits = new Semaphore(parallelism);
+    }
+
+    void add(String bucket, String key) throws IOException {
+        List<String> batch = batches.computeIfAbsent(bucket, b -> new ArrayList<>(MAX_BATCH_SIZE));
+        batch.add(key);
+        if (batch.size() == MAX_BATCH_SIZE) {
+            batches.remove(bucket);
+            send(bucket, batch);
+        }
+    }
+
+    /**
+     * Adds every key under {@code prefix}, listing page by page as batches go out.
+     */
+    void addPrefix(String bucket, String prefix) throws IOException {
+        String continuationToken = null;
+        do {
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                                                               .bucket(bucket)
+                                                               .prefix(prefix)
+                                                               .continuationToken(continuationToken)
+                                                               .build();
+            ListObjectsV2Response response = fileSystem.getS3Client().listObjectsV2(request);
+            for (S3Object object : response.contents()) {
+                add(bucket, object.key());
+            }
+            continuationToken = Boolean.TRUE.equals(response.isTruncated()) ? response.nextContinuationToken() : null;
+        } while (continuationToken != null);
+    }
+
+    DeleteReport finish() throws IOException {
+        for (Map.Entry<String, List<String>> batch : batches.entrySet()) {
+            send(batch.getKey(), batch.getValue());
+        }
+        batches.clear();
+
+        // every batch holds a permit until it completes
+        acquire(parallelism);
+        permits.release(parallelism);
+        return new DeleteReport(deleted.sum(), new ArrayList<>(failures));
+    }
+
+    private void send(String bucket, List<String> keys) throws IOException {
+        List<ObjectIdentifier> objects = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            objects.add(ObjectIdentifier.builder().key(key).build());
+        }
+        DeleteObjectsRequest request = DeleteObjectsRequest.builder()
+                                                           .bucket(bucket)
+                                                           .delete(Delete.builder().objects(objects).quiet(true).build())
+                                                           .build();
+
+        acquire(1);
+        s3Async.deleteObjects(request).whenComplete((response, error) -> {
+            try {
+                if (error != null) {
+                    failBatch(bucket, keys, error);
+                } else {
+                    Set<String> failed = new HashSet<>();
+                    for (S3Error s3Error : response.errors()) {
+                        failed.add(s3Error.key());
+                        failures.add(new DeleteReport.Failure(bucket, s3Error.key(), s3Error.code(), s3Error.message()));
+                    }
+                    for (String key : keys) {
+                        if (!failed.contains(key))
+                            fileSystem.getMetadataCache().invalidate(bucket, key);
+                    }
+                    deleted.add(keys.size() - failed.size());
+                }
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    private void failBatch(String bucket, List<String> keys, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String code = cause.getClass().getSimpleName();
+        if (cause instanceof AwsServiceException && ((AwsServiceException) cause).awsErrorDetails() != null)
+            code = ((AwsServiceException) cause).awsErrorDetails().errorCode();
+
+        for (String key : keys) {
+            failures.add(new DeleteReport.Failure(bucket, key, code, cause.getMessage()));
+        }
+    }
+
+    private void acquire(int count) throws InterruptedIOException {
+        try {
+            permits.acquire(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.fcofdez.s3fs;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Request body backed by a buffer the caller keeps ownership of. Unlike {@link AsyncRequestBody#fromByteBuffer} the
+ * bytes are not copied; every subscription, including the ones made by retries, gets its own read-only view.
+ */
+final class ByteBufferRequestBody implements AsyncRequestBody {
+    private final ByteBuffer buffer;
+
+    ByteBufferRequestBody(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return Optional.of((long) buffer.remaining());
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new Subscription() {
+            private boolean done;
+
+            @Override
+            public void request(long n) {
+                if (done)
+                    return;
+
+                done = true;
+                if (n <= 0) {
+                    subscriber.onError(new IllegalArgumentException("Demand must be positive but got " + n));
+                    return;
+                }
+                if (buffer.hasRemaining())
+                    subscriber.onNext(buffer.asReadOnlyBuffer());
+                subscriber.onComplete();
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+            }
+        });
+    }
+}
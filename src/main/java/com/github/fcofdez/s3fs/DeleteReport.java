@@ -0,0 +1,75 @@
+package com.github.fcofdez.s3fs;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk delete. S3 deletes each key of a batch independently, so some may fail while the rest succeed.
+ */
+public final class DeleteReport {
+    private final long deletedCount;
+    private final List<Failure> failures;
+
+    DeleteReport(long deletedCount, List<Failure> failures) {
+        this.deletedCount = deletedCount;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    public long getDeletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * Keys that are still there, with the reason S3 gave. Empty when everything was deleted.
+     */
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "DeleteReport{deleted=" + deletedCount + ", failed=" + failures.size() + "}";
+    }
+
+    public static final class Failure {
+        private final String bucket;
+        private final String key;
+        private final String code;
+        private final String message;
+
+        Failure(String bucket, String key, String code, String message) {
+            this.bucket = bucket;
+            this.key = key;
+            this.code = code;
+            this.message = message;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * S3 error code, such as {@code AccessDenied}.
+         */
+        public String getCode() {
+            return code;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "s3://" + bucket + "/" + key + ": " + code + " " + message;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.github.fcofdez.s3fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent second tier of the {@link BlockCache}, one memory-mapped file per block.
+ *
+ * Files are named after a digest of bucket and key plus the block index, and start with a small header holding the
+ * bucket, key and ETag of the object version they were read from. The index is rebuilt on startup from file names and
+ * sizes alone, without opening any file; the header is only checked when a block is read, which also drops blocks of
+ * objects that changed since they were cached.
+ */
+final class DiskBlockCache {
+    private static final String SUFFIX = ".blk";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x53334243;
+    // pending writes beyond this are dropped rather than queued, the disk tier is best effort
+    private static final int MAX_PENDING_WRITES = 64;
+
+    private final Path directory;
+    private final long capacity;
+    // file name -> file length, in LRU order
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private final Executor writer;
+
+    DiskBlockCache(Path directory, long capacity) throws IOException {
+        this(directory, capacity, new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                                         new LinkedBlockingQueue<>(MAX_PENDING_WRITES),
+                                                         r -> {
+                                                             Thread thread = new Thread(r, "s3fs-disk-cache-writer");
+                                                             thread.setDaemon(true);
+                                                             return thread;
+                                                         },
+                                                         new ThreadPoolExecutor.DiscardPolicy()));
+    }
+
+    /**
+     * @param writer runs the file writes, which {@link #put(BlockCache.BlockKey, ByteBuffer)} leaves to it
+     */
+    DiskBlockCache(Path directory, long capacity, Executor writer) throws IOException {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.writer = writer;
+        Files.createDirectories(directory);
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() throws IOException {
+        List<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // interrupted write
+                    Files.deleteIfExists(entry);
+                } else if (name.endsWith(SUFFIX)) {
+                    files.add(entry.toFile());
+                }
+            }
+        }
+
+        // least recently written first, so they are the first to go
+        files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        synchronized (this) {
+            for (File file : files) {
+                index.put(file.getName(), file.length());
+                usedBytes += file.length();
+            }
+            evictOverflow();
+        }
+    }
+
+    /**
+     * Returns the block mapped read-only and positioned at 0, or {@code null} if it's not cached for this ETag.
+     */
+    ByteBuffer get(BlockCache.BlockKey key) {
+        String name = fileName(key);
+        synchronized (this) {
+            if (index.get(name) == null)
+                return null;
+        }
+
+        Path file = directory.resolve(name);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Header header = Header.read(mapped);
+            if (header == null || !header.matches(key)) {
+                remove(name);
+                return null;
+            }
+            ByteBuffer data = mapped.slice();
+            data.limit(header.length);
+            return data;
+        } catch (IOException e) {
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of {@code data} in the background. {@code data} must not be modified afterwards.
+     */
+    void put(BlockCache.BlockKey key, ByteBuffer data) {
+        String name = fileName(key);
+        synchronized (this) {
+            if (index.containsKey(name) || data.remaining() > capacity)
+                return;
+        }
+
+        ByteBuffer block = data.duplicate();
+        writer.execute(() -> write(name, key, block));
+    }
+
+    private void write(String name, BlockCache.BlockKey key, ByteBuffer data) {
+        Path temp = directory.resolve(name + TEMP_SUFFIX);
+        byte[] header = Header.encode(key, data.remaining());
+        long length = header.length + data.remaining();
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                mapped.put(header);
+                mapped.put(data);
+                mapped.force();
+            }
+            Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+
+        synchronized (this) {
+            Long previous = index.put(name, length);
+            usedBytes += length - (previous == null ? 0 : previous);
+            evictOverflow();
+        }
+    }
+
+    private synchronized void remove(String name) {
+        Long length = index.remove(name);
+        if (length != null)
+            usedBytes -= length;
+        delete(name);
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Long>> lru = index.entrySet().iterator();
+        while (usedBytes > capacity && lru.hasNext()) {
+            Map.Entry<String, Long> entry = lru.next();
+            lru.remove();
+            usedBytes -= entry.getValue();
+            delete(entry.getKey());
+        }
+    }
+
+    private void delete(String name) {
+        try {
+            // mappings handed out earlier stay valid until they are collected
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException ignored) {
+        }
+    }
+
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    void close() {
+        if (writer instanceof ExecutorService)
+            ((ExecutorService) writer).shutdown();
+    }
+
+    private static String fileName(BlockCache.BlockKey key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(key.bucket.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '/');
+        digest.update(key.key.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder name = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return name.append('.').append(key.index).append(SUFFIX).toString();
+    }
+
+    private static final class Header {
+        final String bucket;
+        final String key;
+        final String eTag;
+        final int length;
+
+        private Header(String bucket, String key, String eTag, int length) {
+            this.bucket = bucket;
+            this.key = key;
+            this.eTag = eTag;
+            this.length = length;
+        }
+
+        boolean matches(BlockCache.BlockKey blockKey) {
+            return bucket.equals(blockKey.bucket) && key.equals(blockKey.key) && eTag.equals(blockKey.eTag);
+        }
+
+        static byte[] encode(BlockCache.BlockKey key, int length) {
+            byte[] bucket = key.bucket.getBytes(StandardCharsets.UTF_8);
+            byte[] objectKey = key.key.getBytes(StandardCharsets.UTF_8);
+            byte[] eTag = key.eTag.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer header = ByteBuffer.allocate(4 + 3 * 4 + bucket.length + objectKey.length + eTag.length + 4);
+            header.putInt(MAGIC);
+            header.putInt(bucket.length).put(bucket);
+            header.putInt(objectKey.length).put(objectKey);
+            header.putInt(eTag.length).put(eTag);
+            header.putInt(length);
+            return header.array();
+        }
+
+        /**
+         * Reads the header and leaves {@code buffer} positioned at the block data, returns {@code null} if the file is
+         * not a block or is truncated. Lengths read from the file are checked against what's left of it before anything
+         * is allocated, a corrupt one could otherwise ask for gigabytes.
+         */
+        static Header read(ByteBuffer buffer) {
+            try {
+                if (buffer.getInt() != MAGIC)
+                    return null;
+                String bucket = readString(buffer);
+                String key = readString(buffer);
+                String eTag = readString(buffer);
+                if (bucket == null || key == null || eTag == null)
+                    return null;
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining())
+                    return null;
+                return new Header(bucket, key, eTag, length);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Returns {@code null} if the length doesn't fit in the rest of {@code buffer}.
+         */
+        private static String readString(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+                return null;
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.fcofdez.s3fs;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
+
+/**
+ * A byte range requested through {@link S3SeekableByteChannel#readVectored}. Its data completes with a flipped
+ * buffer holding exactly {@link #getLength()} bytes.
+ */
+public final class FileRange {
+    private final long offset;
+    private final int length;
+    private final CompletableFuture<ByteBuffer> data = new CompletableFuture<>();
+
+    private FileRange(long offset, int length) {
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static FileRange of(long offset, int length) {
+        checkArgument(offset >= 0, "Offset must be >= 0 but got %d", offset);
+        checkArgument(length >= 0, "Length must be >= 0 but got %d", length);
+        return new FileRange(offset, length);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    long getEnd() {
+        return offset + length;
+    }
+
+    public CompletableFuture<ByteBuffer> getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + offset + ", " + getEnd() + ")";
+    }
+}
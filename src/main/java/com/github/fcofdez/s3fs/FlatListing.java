@@ -0,0 +1,285 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lists a whole subtree with ListObjectsV2 calls without a delimiter and rebuilds its directories in memory, so walking
+ * it costs one request per thousand keys instead of one per directory.
+ *
+ * With {@link S3FSSettings#getListingParallelism()} above one, the first level is listed with a delimiter and every
+ * prefix found there becomes a shard, listed concurrently with the others. Partitioned layouts such as
+ * {@code year=/month=/day=} split nicely that way.
+ *
+ * The tree is held in memory, so a subtree with more than {@link S3FSSettings#getListingMaxFlatKeys()} keys is given up
+ * on as soon as the listing finds out, and left to be listed a level at a time. The paths found in there remember it
+ * through their {@link Descent}, so the directories further down don't each pay for a listing that gives up again.
+ */
+final class FlatListing {
+    private final S3AsyncClient s3Async;
+    private final MetadataCache metadataCache;
+    private final String bucket;
+    private final int parallelism;
+    private final int maxKeys;
+    private final AtomicInteger keys = new AtomicInteger();
+
+    private FlatListing(S3FileSystem fileSystem, String bucket) {
+        this.s3Async = fileSystem.getS3AsyncClient();
+        this.metadataCache = fileSystem.getMetadataCache();
+        this.bucket = bucket;
+        this.parallelism = fileSystem.getSettings().getListingParallelism();
+        this.maxKeys = fileSystem.getSettings().getListingMaxFlatKeys();
+    }
+
+    /**
+     * Lists everything under {@code dir} and returns a stream over its direct children. Entries carry the attributes
+     * found in the listing, and directories carry their part of the tree so streams opened on them don't go to S3.
+     * Returns {@code null} if there are too many keys under {@code dir} to hold them all.
+     */
+    static DirectoryStream<Path> list(S3Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        S3FileSystem fileSystem = (S3FileSystem) dir.getFileSystem();
+        String key = dir.getKey();
+        String prefix = key.isEmpty() || key.endsWith("/") ? key : key + UnixPath.SEPARATOR;
+        Directory tree = new FlatListing(fileSystem, dir.getBucket()).list(prefix);
+        return tree == null ? null : new Stream(dir, tree, filter);
+    }
+
+    private Directory list(String prefix) throws IOException {
+        Directory root = new Directory();
+        if (parallelism <= 1) {
+            RangeFetcher.await(listPages(prefix, root, null));
+            return tooManyKeys() ? null : root;
+        }
+
+        Semaphore permits = new Semaphore(parallelism);
+        List<CompletableFuture<Void>> shards = new ArrayList<>();
+        try {
+            String continuationToken = null;
+            do {
+                ListObjectsV2Response page = RangeFetcher.await(s3Async.listObjectsV2(request(prefix, "/", continuationToken)));
+                for (S3Object object : page.contents()) {
+                    root.add(object.key().substring(prefix.length()), learn(object));
+                }
+                if (!count(page))
+                    break;
+                for (CommonPrefix commonPrefix : page.commonPrefixes()) {
+                    if (tooManyKeys())
+                        break;
+                    String shardPrefix = commonPrefix.prefix();
+                    Directory shard = root.directory(shardPrefix.substring(prefix.length(), shardPrefix.length() - 1));
+                    acquire(permits);
+                    CompletableFuture<Void> listed = listPages(shardPrefix, shard, null);
+                    listed.whenComplete((ignored, error) -> permits.release());
+                    shards.add(listed);
+                }
+                continuationToken = Boolean.TRUE.equals(page.isTruncated()) && !tooManyKeys() ? page.nextContinuationToken() : null;
+            } while (continuationToken != null);
+
+            for (CompletableFuture<Void> shard : shards) {
+                RangeFetcher.await(shard);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (CompletableFuture<Void> shard : shards) {
+                shard.cancel(true);
+            }
+            throw e;
+        }
+        return tooManyKeys() ? null : root;
+    }
+
+    /**
+     * Adds every key under {@code prefix} to {@code into}, one page after the other.
+     */
+    private CompletableFuture<Void> listPages(String prefix, Directory into, String continuationToken) {
+        return s3Async.listObjectsV2(request(prefix, null, continuationToken)).thenCompose(page -> {
+            // another shard may have given up already
+            if (tooManyKeys())
+                return CompletableFuture.completedFuture(null);
+            for (S3Object object : page.contents()) {
+                into.add(object.key().substring(prefix.length()), learn(object));
+            }
+            if (count(page) && Boolean.TRUE.equals(page.isTruncated()))
+                return listPages(prefix, into, page.nextContinuationToken());
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Counts the keys of {@code page}, returning whether the tree can take more.
+     */
+    private boolean count(ListObjectsV2Response page) {
+        return keys.addAndGet(page.contents().size()) <= maxKeys;
+    }
+
+    private boolean tooManyKeys() {
+        return keys.get() > maxKeys;
+    }
+
+    private S3Attributes learn(S3Object object) {
+        S3ObjectMetadata metadata = S3ObjectMetadata.of(object);
+        metadataCache.put(bucket, object.key(), metadata);
+        return S3Attributes.of(metadata);
+    }
+
+    private ListObjectsV2Request request(String prefix, String delimiter, String continuationToken) {
+        return ListObjectsV2Request.builder()
+                                   .bucket(bucket)
+                                   .prefix(prefix)
+                                   .delimiter(delimiter)
+                                   .continuationToken(continuationToken)
+                                   .build();
+    }
+
+    private static void acquire(Semaphore permits) throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Whether a directory found by a level by level listing is worth listing flat, passed on from a directory to its
+     * children.
+     */
+    enum Descent {
+        // found listing a path the caller made, maybe a one off Files.list that only wants the first page
+        NONE,
+        // found listing a directory that was itself found in a listing, a traversal is going down the tree
+        DESCENDING,
+        // somewhere under a subtree that had too many keys to be listed flat
+        TOO_LARGE;
+
+        /**
+         * The descent of the children of {@code dir}, listed a level at a time. {@code tooLarge} if that's because a
+         * flat listing of it just gave up.
+         */
+        static Descent ofChildren(S3Path dir, boolean tooLarge) {
+            if (tooLarge || dir.getDescent() == TOO_LARGE)
+                return TOO_LARGE;
+            return dir.getAttributes() != null ? DESCENDING : NONE;
+        }
+    }
+
+    /**
+     * A directory of a listed tree. A name can be both an object and a directory, S3 allows {@code a} and {@code a/b}
+     * side by side.
+     */
+    static final class Directory {
+        private final Map<String, S3Attributes> files = new LinkedHashMap<>();
+        private final Map<String, Directory> directories = new LinkedHashMap<>();
+
+        /**
+         * Adds the object at {@code path}, relative to this directory, creating the directories on the way. Directory
+         * markers, keys ending in {@code /}, only create directories.
+         */
+        void add(String path, S3Attributes attributes) {
+            Directory dir = this;
+            int start = 0;
+            int slash;
+            while ((slash = path.indexOf(UnixPath.SEPARATOR, start)) != -1) {
+                if (slash > start)
+                    dir = dir.directory(path.substring(start, slash));
+                start = slash + 1;
+            }
+            if (start < path.length())
+                dir.files.put(path.substring(start), attributes);
+        }
+
+        Directory directory(String name) {
+            return directories.computeIfAbsent(name, n -> new Directory());
+        }
+    }
+
+    /**
+     * Streams the children of a listed directory out of memory.
+     */
+    static final class Stream implements DirectoryStream<Path> {
+        private final S3Path dir;
+        private final Directory tree;
+        private final Filter<? super Path> filter;
+        private boolean iteratorReturned;
+        private volatile boolean closed;
+
+        Stream(S3Path dir, Directory tree, Filter<? super Path> filter) {
+            this.dir = dir;
+            this.tree = tree;
+            this.filter = filter;
+        }
+
+        @Override
+        public synchronized Iterator<Path> iterator() {
+            if (closed)
+                throw new IllegalStateException("Directory stream is closed");
+            if (iteratorReturned)
+                throw new IllegalStateException("Iterator already obtained");
+
+            iteratorReturned = true;
+            return new PathIterator();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private final class PathIterator implements Iterator<Path> {
+            private final Iterator<Map.Entry<String, S3Attributes>> files = tree.files.entrySet().iterator();
+            private final Iterator<Map.Entry<String, Directory>> directories = tree.directories.entrySet().iterator();
+            private Path next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !closed) {
+                    if (files.hasNext()) {
+                        Map.Entry<String, S3Attributes> file = files.next();
+                        next = accept(dir.resolve(file.getKey(), file.getValue(), null));
+                    } else if (directories.hasNext()) {
+                        Map.Entry<String, Directory> directory = directories.next();
+                        next = accept(dir.resolve(directory.getKey(), S3Attributes.DIRECTORY, directory.getValue()));
+                    } else {
+                        break;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                Path result = next;
+                next = null;
+                return result;
+            }
+
+            private Path accept(Path entry) {
+                try {
+                    return filter == null || filter.accept(entry) ? entry : null;
+                } catch (IOException e) {
+                    throw new DirectoryIteratorException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.fcofdez.s3fs;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
+
+/**
+ * Translates globs, with the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}, into regular
+ * expressions, and finds the literal text they start with so listings can ask S3 for that prefix only.
+ */
+final class Globs {
+    private static final String REGEX_META = "\\^$.|?*+()[]{}";
+    private static final String GLOB_META = "*?[{";
+
+    private Globs() {
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder("^");
+        boolean inGroup = false;
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            switch (c) {
+                case '\\':
+                    checkArgument(i < glob.length(), "Nothing to escape at the end of glob '%s'", glob);
+                    appendLiteral(regex, glob.charAt(i++));
+                    break;
+                case '*':
+                    if (i < glob.length() && glob.charAt(i) == '*') {
+                        // ** crosses directory boundaries
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    i = appendClass(regex, glob, i);
+                    break;
+                case '{':
+                    checkArgument(!inGroup, "Nested groups in glob '%s'", glob);
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    if (inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+                    } else {
+                        appendLiteral(regex, c);
+                    }
+                    break;
+                case ',':
+                    if (inGroup) {
+                        regex.append(")|(?:");
+                    } else {
+                        regex.append(c);
+                    }
+                    break;
+                default:
+                    appendLiteral(regex, c);
+            }
+        }
+        checkArgument(!inGroup, "Missing '}' in glob '%s'", glob);
+        return regex.append('$').toString();
+    }
+
+    /**
+     * Appends the bracket expression starting at {@code start}, right after its {@code [}, and returns the index
+     * after its closing {@code ]}. Never matches {@code /}.
+     */
+    private static int appendClass(StringBuilder regex, String glob, int start) {
+        regex.append("[[^/]&&[");
+        int i = start;
+        if (i < glob.length() && glob.charAt(i) == '!') {
+            regex.append('^');
+            i++;
+        } else if (i < glob.length() && glob.charAt(i) == '^') {
+            regex.append("\\^");
+            i++;
+        }
+
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            if (c == ']') {
+                regex.append("]]");
+                return i;
+            }
+            checkArgument(c != '/', "'/' in a bracket expression of glob '%s'", glob);
+            if (c == '\\' || c == '[' || c == '&' || c == '^')
+                regex.append('\\');
+            regex.append(c);
+        }
+        throw new IllegalArgumentException(String.format("Missing ']' in glob '%s'", glob));
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if (REGEX_META.indexOf(c) != -1)
+            regex.append('\\');
+        regex.append(c);
+    }
+
+    /**
+     * Returns the text every match of {@code glob} starts with, {@code logs/2026-10-} for {@code logs/2026-10-*.gz}.
+     */
+    static String literalPrefix(String glob) {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (GLOB_META.indexOf(c) != -1)
+                break;
+            if (c == '\\') {
+                if (++i == glob.length())
+                    break;
+                c = glob.charAt(i);
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Returns {@code true} if {@code glob} only matches the text of its {@link #literalPrefix(String)}.
+     */
+    static boolean isLiteral(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (GLOB_META.indexOf(c) != -1)
+                return false;
+            if (c == '\\')
+                i++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,225 @@
+package com.github.fcofdez.s3fs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Hedged requests: if a GET hasn't responded once the 95th percentile of recent response times has gone by, a
+ * duplicate is sent and whichever of the two completes first wins, the other one is cancelled. Only the slowest few
+ * percent of requests are duplicated, which is where a stalled connection or a slow server costs the most.
+ *
+ * The threshold adapts: it's recomputed from the time to the response of every request, primary or duplicate, over a
+ * window of recent requests. Nothing is hedged until enough of them have been seen. Duplicates are paid for with
+ * credit that every request earns, {@code budgetPercent} hundredths of a request each, so hedging never adds more than
+ * that share of GETs even when everything is slow.
+ *
+ * One per filesystem, shared by all its channels.
+ */
+final class Hedging {
+    static final int MIN_SAMPLES = 100;
+    private static final double PERCENTILE = 95;
+    private static final int RECOMPUTE_EVERY = 100;
+    private static final int WINDOW = 10_000;
+    // a hedge sooner than this would mostly duplicate requests that are fine
+    private static final long MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long NO_DELAY = -1;
+    // credit is counted in hundredths of a request, capped so an idle period doesn't buy a burst of duplicates
+    private static final long REQUEST_COST = 100;
+    private static final long MAX_CREDIT = 10 * REQUEST_COST;
+
+    private final int budgetPercent;
+    private final S3Metrics metrics;
+    private final LongSupplier nanoClock;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong credit = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private volatile LatencyHistogram responseTimes = new LatencyHistogram();
+    private volatile long delayNanos = NO_DELAY;
+
+    Hedging(int budgetPercent, S3Metrics metrics) {
+        this(budgetPercent, metrics, System::nanoTime, newScheduler());
+    }
+
+    /**
+     * @param nanoClock times responses, in nanoseconds
+     * @param scheduler runs the timers that send duplicates, shut down by {@link #close()}
+     */
+    Hedging(int budgetPercent, S3Metrics metrics, LongSupplier nanoClock, ScheduledExecutorService scheduler) {
+        this.budgetPercent = budgetPercent;
+        this.metrics = metrics;
+        this.nanoClock = nanoClock;
+        this.scheduler = scheduler;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "s3fs-hedging");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most timers are cancelled because the request responded in time
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Runs the request {@code start} issues, possibly twice. {@code start} is handed the {@link Attempt} it reports
+     * to; the duplicate only goes out once the first attempt has been {@link Attempt#sent() sent} for longer than the
+     * threshold without a {@link Attempt#responded() response}. The result of the losing attempt, if it completes
+     * anyway, goes to {@code discard}.
+     *
+     * Cancelling the returned future cancels both attempts.
+     */
+    <T> CompletableFuture<T> submit(Function<Attempt, CompletableFuture<T>> start, Consumer<T> discard) {
+        earn();
+        Hedged<T> hedged = new Hedged<>(start, discard);
+        hedged.startPrimary();
+        return hedged.result;
+    }
+
+    /**
+     * Current threshold in nanoseconds, or -1 while too few requests have been seen.
+     */
+    long delayNanos() {
+        return delayNanos;
+    }
+
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    void recordResponse(long nanos) {
+        LatencyHistogram histogram = responseTimes;
+        histogram.record(nanos);
+        long count = samples.incrementAndGet();
+        if (count % RECOMPUTE_EVERY != 0 || count < MIN_SAMPLES)
+            return;
+
+        delayNanos = Math.max(MIN_DELAY_NANOS, histogram.getPercentileNanos(PERCENTILE));
+        // start a fresh window, the threshold computed from the old one stands until the new one has enough samples
+        if (histogram.getCount() >= WINDOW)
+            responseTimes = new LatencyHistogram();
+    }
+
+    private void earn() {
+        long current;
+        do {
+            current = credit.get();
+            if (current >= MAX_CREDIT)
+                return;
+        } while (!credit.compareAndSet(current, Math.min(MAX_CREDIT, current + budgetPercent)));
+    }
+
+    private boolean spend() {
+        long current;
+        do {
+            current = credit.get();
+            if (current < REQUEST_COST)
+                return false;
+        } while (!credit.compareAndSet(current, current - REQUEST_COST));
+        return true;
+    }
+
+    /**
+     * What a request reports back to hedging, once when it goes out and once when its response arrives.
+     */
+    final class Attempt {
+        private final Hedged<?> hedged;
+        private final boolean primary;
+        private volatile long sentNanos;
+
+        private Attempt(Hedged<?> hedged, boolean primary) {
+            this.hedged = hedged;
+            this.primary = primary;
+        }
+
+        void sent() {
+            sentNanos = nanoClock.getAsLong();
+            if (primary)
+                hedged.schedule();
+        }
+
+        void responded() {
+            recordResponse(nanoClock.getAsLong() - sentNanos);
+            hedged.responded = true;
+        }
+    }
+
+    private final class Hedged<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Function<Attempt, CompletableFuture<T>> start;
+        private final Consumer<T> discard;
+        // attempts that may still complete the result
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean responded;
+        private volatile CompletableFuture<T> primary;
+        private volatile CompletableFuture<T> duplicate;
+        private volatile ScheduledFuture<?> timer;
+
+        Hedged(Function<Attempt, CompletableFuture<T>> start, Consumer<T> discard) {
+            this.start = start;
+            this.discard = discard;
+        }
+
+        void startPrimary() {
+            primary = start.apply(new Attempt(this, true));
+            forward(primary, false);
+            result.whenComplete((value, error) -> {
+                ScheduledFuture<?> timer = this.timer;
+                if (timer != null)
+                    timer.cancel(false);
+                primary.cancel(true);
+                CompletableFuture<T> duplicate = this.duplicate;
+                if (duplicate != null)
+                    duplicate.cancel(true);
+            });
+        }
+
+        void schedule() {
+            long delay = delayNanos;
+            if (delay == NO_DELAY || result.isDone())
+                return;
+            try {
+                timer = scheduler.schedule(this::hedge, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // the filesystem is closing, the primary request carries on alone
+            }
+        }
+
+        private void hedge() {
+            if (responded || result.isDone() || !spend())
+                return;
+            // the primary may have failed meanwhile, then the result already has its error
+            if (pending.getAndUpdate(count -> count == 0 ? 0 : count + 1) == 0)
+                return;
+
+            metrics.hedged();
+            duplicate = start.apply(new Attempt(this, false));
+            if (result.isDone())
+                duplicate.cancel(true);
+            forward(duplicate, true);
+        }
+
+        private void forward(CompletableFuture<T> attempt, boolean isDuplicate) {
+            attempt.whenComplete((value, error) -> {
+                if (error == null) {
+                    if (!result.complete(value))
+                        discard.accept(value);
+                    else if (isDuplicate)
+                        metrics.hedgeWon();
+                } else if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(error);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.fcofdez.s3fs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
+
+/**
+ * Distribution of durations, recorded without locks so it can sit on the read path.
+ *
+ * Durations are counted in microsecond buckets whose width grows with their value: every power of two is split in
+ * {@code SUB_BUCKETS} equal parts, so any percentile is known within 25% whether it's a millisecond or a minute, in a
+ * fixed few hundred longs.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^40 microseconds is twelve days, longer durations land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(bucket(micros));
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Smallest duration, in microseconds, that doesn't fit in {@code bucket}.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket + 1;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Duration, in nanoseconds, under which {@code percentile} percent of the recorded ones fall, rounded up to the
+     * bucket it lands in. 0 when nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100 but got %s", percentile);
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+        }
+        return TimeUnit.MICROSECONDS.toNanos(upperBound(BUCKETS - 1));
+    }
+
+    public double getPercentileMillis(double percentile) {
+        return getPercentileNanos(percentile) / 1e6;
+    }
+
+    public double getMeanMillis() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / 1e6 / n;
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.fcofdez.s3fs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Object metadata learnt as a side effect of other requests, so opening a channel or reading attributes doesn't need
+ * its own HEAD. Listings feed it too, one page describes up to a thousand objects.
+ *
+ * Entries expire {@code ttl} after they were learnt, which bounds how long a change made through another client goes
+ * unnoticed. At most {@code capacity} entries are kept, the oldest ones, which are also the closest to expiring, make
+ * room for new ones.
+ */
+final class MetadataCache {
+    // insertion ordered, and re-inserted on every put, so the eldest entry is the oldest one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final long ttlNanos;
+    private final int capacity;
+    private final LongSupplier nanoClock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    MetadataCache(long ttlMillis, int capacity) {
+        this(ttlMillis, capacity, System::nanoTime);
+    }
+
+    MetadataCache(long ttlMillis, int capacity, LongSupplier nanoClock) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+    }
+
+    synchronized S3ObjectMetadata get(String bucket, String key) {
+        String id = id(bucket, key);
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (nanoClock.getAsLong() - entry.learnt >= ttlNanos) {
+            entries.remove(id);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.metadata;
+    }
+
+    synchronized void put(String bucket, String key, S3ObjectMetadata metadata) {
+        if (capacity == 0)
+            return;
+
+        String id = id(bucket, key);
+        entries.remove(id);
+        entries.put(id, new Entry(metadata, nanoClock.getAsLong()));
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    synchronized void invalidate(String bucket, String key) {
+        entries.remove(id(bucket, key));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    private static String id(String bucket, String key) {
+        return bucket + UnixPath.SEPARATOR + key;
+    }
+
+    private static final class Entry {
+        final S3ObjectMetadata metadata;
+        final long learnt;
+
+        Entry(S3ObjectMetadata metadata, long learnt) {
+            this.metadata = metadata;
+            this.learnt = learnt;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records every request of a pair of shared clients into the {@link S3Metrics} of the filesystem of the request's
+ * bucket. An execution spans the SDK's own retries, each extra transmission is one.
+ */
+final class MetricsInterceptor implements ExecutionInterceptor {
+    private static final ExecutionAttribute<Execution> EXECUTION = new ExecutionAttribute<>("S3FileSystemMetrics");
+
+    private final ConcurrentMap<String, S3Metrics> metricsByBucket = new ConcurrentHashMap<>();
+
+    void register(String bucket, S3Metrics metrics) {
+        metricsByBucket.put(bucket, metrics);
+    }
+
+    void unregister(String bucket, S3Metrics metrics) {
+        metricsByBucket.remove(bucket, metrics);
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        String bucket = context.request().getValueForField("Bucket", String.class).orElse(null);
+        S3Metrics metrics = bucket == null ? null : metricsByBucket.get(bucket);
+        if (metrics == null)
+            return;
+
+        metrics.requestStarted();
+        executionAttributes.putAttribute(EXECUTION, new Execution(metrics, System.nanoTime()));
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        Execution execution = executionAttributes.getAttribute(EXECUTION);
+        if (execution != null && ++execution.transmissions > 1)
+            execution.metrics.retried();
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        finish(context.request(), executionAttributes, false);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        finish(context.request(), executionAttributes, true);
+    }
+
+    private static void finish(SdkRequest request, ExecutionAttributes executionAttributes, boolean failed) {
+        Execution execution = executionAttributes.getAttribute(EXECUTION);
+        // a failure may follow afterExecution, the request is only counted once
+        if (execution == null || execution.finished)
+            return;
+
+        execution.finished = true;
+        execution.metrics.requestFinished(S3Metrics.Operation.of(request), System.nanoTime() - execution.startNanos, failed);
+    }
+
+    /**
+     * One execution is handled by one thread at a time, the SDK hands it over between stages.
+     */
+    private static final class Execution {
+        final S3Metrics metrics;
+        final long startNanos;
+        int transmissions;
+        boolean finished;
+
+        Execution(S3Metrics metrics, long startNanos) {
+            this.metrics = metrics;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.github.fcofdez.s3fs;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Issues ranged GETs for a single object through the async client.
+ *
+ * Once the object's ETag is known, from the owner or from the first response, every GET carries it in
+ * {@code If-Match}: should the object be replaced, S3 answers 412 instead of sending bytes of another version.
+ */
+final class RangeFetcher {
+    private final S3AsyncClient s3AsyncClient;
+    private final String bucket;
+    private final String key;
+    private final BufferPool bufferPool;
+    private final MetadataCache metadataCache;
+    private final S3Metrics metrics;
+    // null when hedged reads are off
+    private final Hedging hedging;
+    // the version GETs are pinned to, null until known
+    private volatile String eTag;
+
+    RangeFetcher(S3FileSystem fileSystem, String bucket, String key) {
+        this.s3AsyncClient = fileSystem.getS3AsyncClient();
+        this.bucket = bucket;
+        this.key = key;
+        this.bufferPool = fileSystem.getBufferPool();
+        this.metadataCache = fileSystem.getMetadataCache();
+        this.metrics = fileSystem.getMetrics();
+        this.hedging = fileSystem.getHedging();
+    }
+
+    /**
+     * Fetches {@code length} bytes starting at {@code offset} into a pooled buffer, waiting without blocking for the
+     * pool to have room. The returned buffer is flipped and ready to be read; whoever consumes it hands it back through
+     * {@link #release(ByteBuffer)}.
+     *
+     * The returned future may be cancelled at any point, the buffer then goes back to the pool once the request no
+     * longer writes into it.
+     *
+     * With hedged reads on, a GET slow to respond is duplicated into a second pooled buffer and the loser's buffer goes
+     * back to the pool, see {@link Hedging}.
+     */
+    CompletableFuture<ByteBuffer> fetch(long offset, int length) {
+        if (hedging == null)
+            return fetchPooled(offset, length, null);
+        return hedging.submit(attempt -> fetchPooled(offset, length, attempt), this::release);
+    }
+
+    /**
+     * @param attempt told when the GET goes out and when it responds, {@code null} when not hedged
+     */
+    private CompletableFuture<ByteBuffer> fetchPooled(long offset, int length, Hedging.Attempt attempt) {
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        bufferPool.acquireAsync(length).whenComplete((buffer, acquireError) -> {
+            if (acquireError != null) {
+                result.completeExceptionally(acquireError);
+                return;
+            }
+            if (result.isDone()) {
+                bufferPool.release(buffer);
+                return;
+            }
+            Consumer<GetObjectResponse> onResponse = this::learnMetadata;
+            if (attempt != null) {
+                attempt.sent();
+                onResponse = response -> {
+                    attempt.responded();
+                    learnMetadata(response);
+                };
+            }
+            IntoByteBuffer into = new IntoByteBuffer(buffer, onResponse, metrics);
+            CompletableFuture<ByteBuffer> request = fetch(offset, buffer.remaining(), into);
+            request.whenComplete((filled, error) -> {
+                if (error != null) {
+                    bufferPool.release(buffer);
+                    result.completeExceptionally(error);
+                } else if (!result.complete(filled)) {
+                    bufferPool.release(buffer);
+                }
+            });
+            // abort the GET rather than download a range nobody is waiting for, the body stops being written first
+            // so the buffer can go back to the pool right away
+            result.whenComplete((filled, error) -> {
+                if (result.isCancelled()) {
+                    into.cancel();
+                    request.cancel(true);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Fetches {@code target.remaining()} bytes starting at {@code offset} straight into {@code target}.
+     *
+     * Cancelling the returned future aborts the GET, and by the time {@code cancel} returns nothing more is written into
+     * {@code target}, so the caller can have it back right away.
+     */
+    CompletableFuture<ByteBuffer> fetchInto(long offset, ByteBuffer target) {
+        IntoByteBuffer into = new IntoByteBuffer(target, this::learnMetadata, metrics);
+        CompletableFuture<ByteBuffer> request = fetch(offset, target.remaining(), into);
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        request.whenComplete((filled, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(filled);
+            }
+        });
+        result.whenComplete((filled, error) -> {
+            if (result.isCancelled()) {
+                into.cancel();
+                request.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Fetches {@code length} bytes starting at {@code offset}, handing the body to {@code transformer}.
+     */
+    <T> CompletableFuture<T> fetch(long offset, int length, AsyncResponseTransformer<GetObjectResponse, T> transformer) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                                                   .bucket(bucket)
+                                                   .key(key)
+                                                   .range(String.format("bytes=%d-%d", offset, offset + length - 1))
+                                                   .ifMatch(eTag)
+                                                   .build();
+        return s3AsyncClient.getObject(request, transformer);
+    }
+
+    private void learnMetadata(GetObjectResponse response) {
+        if (eTag == null)
+            eTag = response.eTag();
+        S3ObjectMetadata metadata = S3ObjectMetadata.of(response);
+        if (metadata != null)
+            metadataCache.put(bucket, key, metadata);
+    }
+
+    /**
+     * Pins the GETs issued from now on to {@code eTag}, or unpins them when {@code null}.
+     */
+    void pin(String eTag) {
+        this.eTag = eTag;
+    }
+
+    /**
+     * The ETag GETs are pinned to, {@code null} if none.
+     */
+    String eTag() {
+        return eTag;
+    }
+
+    void release(ByteBuffer buffer) {
+        bufferPool.release(buffer);
+    }
+
+    boolean isHedged() {
+        return hedging != null;
+    }
+
+    S3Metrics metrics() {
+        return metrics;
+    }
+
+    String bucket() {
+        return bucket;
+    }
+
+    String key() {
+        return key;
+    }
+
+    /**
+     * Waits for {@code future}, unwrapping failures into {@link IOException}s.
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Writes the response body straight into a buffer sized for the requested range, so the bytes are not copied
+     * again once the request completes. On completion the buffer spans exactly the bytes received.
+     *
+     * Once {@link #cancel() cancelled} nothing more is written into the buffer.
+     */
+    private static final class IntoByteBuffer implements AsyncResponseTransformer<GetObjectResponse, ByteBuffer> {
+        private final ByteBuffer target;
+        private final int start;
+        private final Consumer<GetObjectResponse> onResponse;
+        private final S3Metrics metrics;
+        private volatile CompletableFuture<ByteBuffer> future;
+        // guarded by this, along with every write into target
+        private Subscription subscription;
+        private boolean cancelled;
+
+        IntoByteBuffer(ByteBuffer target, Consumer<GetObjectResponse> onResponse, S3Metrics metrics) {
+            this.target = target;
+            this.start = target.position();
+            this.onResponse = onResponse;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Stops the body from being written and cancels its subscription. Returns once a write in progress, if any,
+         * is over.
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (subscription != null)
+                subscription.cancel();
+        }
+
+        @Override
+        public CompletableFuture<ByteBuffer> prepare() {
+            future = new CompletableFuture<>();
+            return future;
+        }
+
+        @Override
+        public void onResponse(GetObjectResponse response) {
+            onResponse.accept(response);
+        }
+
+        @Override
+        public void onStream(SdkPublisher<ByteBuffer> publisher) {
+            publisher.subscribe(new Subscriber<ByteBuffer>() {
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    synchronized (IntoByteBuffer.this) {
+                        if (cancelled) {
+                            subscription.cancel();
+                            return;
+                        }
+                        IntoByteBuffer.this.subscription = subscription;
+                    }
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ByteBuffer byteBuffer) {
+                    metrics.addBytesRead(byteBuffer.remaining());
+                    synchronized (IntoByteBuffer.this) {
+                        if (cancelled)
+                            return;
+                        if (byteBuffer.remaining() > target.remaining()) {
+                            subscription.cancel();
+                            future.completeExceptionally(new IOException("Received more bytes than requested"));
+                            return;
+                        }
+                        target.put(byteBuffer);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    synchronized (IntoByteBuffer.this) {
+                        if (cancelled)
+                            return;
+                        target.limit(target.position());
+                        target.position(start);
+                    }
+                    future.complete(target);
+                }
+            });
+        }
+
+        @Override
+        public void exceptionOccurred(Throwable error) {
+            future.completeExceptionally(error);
+        }
+    }
+}
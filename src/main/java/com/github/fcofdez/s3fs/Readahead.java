@@ -0,0 +1,53 @@
+package com.github.fcofdez.s3fs;
+
+/**
+ * Sizes the ranged GETs issued by a channel.
+ *
+ * The window starts at {@code minWindow} and doubles every time a fetch starts where the previous one ended (or
+ * within one window of it), up to {@code maxWindow}. Any other access pattern is treated as random and resets the
+ * window, so seek-heavy readers keep paying for small ranges only.
+ */
+final class Readahead {
+    private final int minWindow;
+    private final int maxWindow;
+
+    private int window;
+    private long nextExpectedPosition = -1;
+
+    Readahead(int minWindow, int maxWindow) {
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.window = minWindow;
+    }
+
+    /**
+     * Returns the number of bytes to fetch starting at {@code position}.
+     */
+    int nextWindow(long position) {
+        if (isSequential(position)) {
+            window = (int) Math.min((long) window << 1, maxWindow);
+        } else {
+            window = minWindow;
+        }
+        return window;
+    }
+
+    /**
+     * Records that {@code length} bytes were fetched starting at {@code position}.
+     */
+    void onFetch(long position, int length) {
+        nextExpectedPosition = position + length;
+    }
+
+    boolean isSequential(long position) {
+        if (nextExpectedPosition < 0)
+            return false;
+
+        long gap = position - nextExpectedPosition;
+        return gap >= 0 && gap < window;
+    }
+
+    int window() {
+        return window;
+    }
+}
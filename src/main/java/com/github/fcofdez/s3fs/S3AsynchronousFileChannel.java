@@ -0,0 +1,259 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
+
+/**
+ * Read-only {@link AsynchronousFileChannel} over an S3 object.
+ *
+ * Every positional read is a single ranged GET on the async client written straight into the caller's buffer, so no
+ * thread is held while the request is in flight. Cancelling the returned future aborts the GET and leaves the buffer
+ * alone from then on. Completion handlers run on the executor given at open time, or on a
+ * pool of the provider when there is none, never on the SDK threads: those belong to clients shared with other
+ * filesystems, and a handler blocking there would stall their requests too.
+ *
+ * Opening doesn't touch S3: the object size comes from the filesystem metadata cache, which every GET keeps up to date,
+ * and only {@link #size()} falls back to a HEAD when nothing has been read yet. A missing object shows up as a
+ * {@link NoSuchFileException} from the first read.
+ *
+ * Reads are pinned to one version of the object with If-Match, see {@link RangeFetcher}. Should the version the cache
+ * named turn out to be replaced before any bytes were read, the channel moves on to the current one; after that, reads
+ * fail rather than return bytes of two versions.
+ */
+class S3AsynchronousFileChannel extends AsynchronousFileChannel {
+    private final S3FileSystem fileSystem;
+    private final String bucket;
+    private final String key;
+    private final RangeFetcher fetcher;
+    private final ExecutorService executor;
+    // whether a response vouched for the cached size, which may be stale until then
+    private volatile boolean confirmed;
+    // whether any byte went out to the caller, after that the channel can't move on to another version
+    private volatile boolean delivered;
+    private volatile boolean closed;
+
+    private S3AsynchronousFileChannel(S3FileSystem fileSystem, String bucket, String key, ExecutorService executor) {
+        this.fileSystem = fileSystem;
+        this.bucket = bucket;
+        this.key = key;
+        this.fetcher = new RangeFetcher(fileSystem, bucket, key);
+        this.executor = executor;
+        S3ObjectMetadata metadata = metadata();
+        if (metadata != null)
+            fetcher.pin(metadata.eTag());
+    }
+
+    /**
+     * @param executor runs the completion handlers
+     */
+    static AsynchronousFileChannel create(Path path, Set<? extends OpenOption> options, ExecutorService executor,
+                                          FileAttribute<?>... attrs) throws IOException {
+        checkArgument(path instanceof S3Path, "Expected an S3 path but got %s", path);
+        if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND))
+            throw new UnsupportedOperationException("Asynchronous channels over S3 are read-only");
+
+        S3Path s3Path = (S3Path) path;
+        S3FileSystem s3FileSystem = (S3FileSystem) s3Path.getFileSystem();
+        return new S3AsynchronousFileChannel(s3FileSystem, s3Path.getBucket(), s3Path.getKey(), executor);
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        S3ObjectMetadata metadata = metadata();
+        if (metadata == null) {
+            HeadObjectRequest request = HeadObjectRequest.builder().bucket(bucket).key(key).build();
+            try {
+                metadata = S3ObjectMetadata.of(fileSystem.getS3Client().headObject(request));
+            } catch (NoSuchKeyException e) {
+                throw noSuchFile(e);
+            }
+            fileSystem.getMetadataCache().put(bucket, key, metadata);
+        }
+        return metadata.size();
+    }
+
+    private S3ObjectMetadata metadata() {
+        return fileSystem.getMetadataCache().get(bucket, key);
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst, long position) {
+        return readAsync(dst, position);
+    }
+
+    @Override
+    public <A> void read(ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        readAsync(dst, position).whenComplete((bytesRead, error) -> {
+            if (error == null) {
+                dispatch(() -> handler.completed(bytesRead, attachment));
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                dispatch(() -> handler.failed(cause, attachment));
+            }
+        });
+    }
+
+    private CompletableFuture<Integer> readAsync(ByteBuffer dst, long position) {
+        checkArgument(position >= 0, "Position must be >= 0 but got %d", position);
+        if (dst.isReadOnly())
+            throw new IllegalArgumentException("Read-only buffer");
+
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new ClosedChannelException());
+            return result;
+        }
+        if (!dst.hasRemaining()) {
+            result.complete(0);
+            return result;
+        }
+        read(dst, position, result, false);
+        return result;
+    }
+
+    private void read(ByteBuffer dst, long position, CompletableFuture<Integer> result, boolean restarted) {
+        // with the size unknown the GET itself finds the end: S3 trims the range, or answers 416 past it
+        S3ObjectMetadata metadata = confirmed ? metadata() : null;
+        long size = metadata == null || !metadata.eTag().equals(fetcher.eTag()) ? Long.MAX_VALUE : metadata.size();
+        if (position >= size) {
+            result.complete(-1);
+            return;
+        }
+
+        int length = (int) Math.min(dst.remaining(), size - position);
+        ByteBuffer target = dst.duplicate();
+        target.limit(target.position() + length);
+        CompletableFuture<ByteBuffer> fetch = fetcher.fetchInto(position, target);
+        // the caller may reuse dst as soon as the read is cancelled
+        result.whenComplete((bytesRead, error) -> {
+            if (result.isCancelled())
+                fetch.cancel(true);
+        });
+        fetch.whenComplete((filled, error) -> {
+            if (error == null) {
+                int bytesRead = filled.remaining();
+                confirmed = true;
+                delivered |= bytesRead > 0;
+                dst.position(dst.position() + bytesRead);
+                result.complete(bytesRead);
+                return;
+            }
+
+            int status = S3SeekableByteChannel.statusOf(error);
+            if (status == 416) {
+                confirmed = true;
+                result.complete(-1);
+            } else if (status == 404) {
+                result.completeExceptionally(noSuchFile(error));
+            } else if (status == 412) {
+                if (versionChanged() && !restarted) {
+                    read(dst, position, result, true);
+                } else {
+                    result.completeExceptionally(new IOException("s3://" + bucket + "/" + key +
+                                                                 " was replaced while being read", error));
+                }
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * The version reads are pinned to was replaced. Forgets what is cached about it and, unless bytes of it were
+     * already read, unpins the reads and returns {@code true}.
+     */
+    private boolean versionChanged() {
+        String eTag = fetcher.eTag();
+        fileSystem.getMetadataCache().invalidate(bucket, key);
+        if (fileSystem.getBlockCache() != null && eTag != null)
+            fileSystem.getBlockCache().invalidate(bucket, key, eTag);
+        if (delivered)
+            return false;
+
+        confirmed = false;
+        fetcher.pin(null);
+        return true;
+    }
+
+    private NoSuchFileException noSuchFile(Throwable cause) {
+        NoSuchFileException e = new NoSuchFileException("s3://" + bucket + "/" + key);
+        e.initCause(cause);
+        return e;
+    }
+
+    private void dispatch(Runnable completion) {
+        executor.execute(completion);
+    }
+
+    @Override
+    public AsynchronousFileChannel truncate(long size) throws IOException {
+        ensureOpen();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        ensureOpen();
+    }
+
+    @Override
+    public <A> void lock(long position, long size, boolean shared, A attachment, CompletionHandler<FileLock, ? super A> handler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<FileLock> lock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void write(ByteBuffer src, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed)
+            throw new ClosedChannelException();
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.fcofdez.s3fs;
+
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Attributes of an object, or of a directory, which in S3 is nothing more than a prefix other keys share. Objects only
+ * have a last modification time, so it also stands for the access and creation times.
+ */
+final class S3Attributes implements S3FileAttributes {
+    private static final FileTime EPOCH = FileTime.fromMillis(0);
+
+    static final S3Attributes DIRECTORY = new S3Attributes(null);
+
+    // null for a directory
+    private final S3ObjectMetadata metadata;
+
+    private S3Attributes(S3ObjectMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    static S3Attributes of(S3ObjectMetadata metadata) {
+        return new S3Attributes(metadata);
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return metadata == null || metadata.lastModified() == null ? EPOCH : FileTime.from(metadata.lastModified());
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return lastModifiedTime();
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return lastModifiedTime();
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return metadata != null;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return metadata == null;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return false;
+    }
+
+    @Override
+    public boolean isOther() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return metadata == null ? 0 : metadata.size();
+    }
+
+    @Override
+    public Object fileKey() {
+        return null;
+    }
+
+    @Override
+    public String eTag() {
+        return metadata == null ? null : metadata.eTag();
+    }
+
+    @Override
+    public String storageClass() {
+        return metadata == null ? null : metadata.storageClass();
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The sync and async clients of a region, endpoint and set of credentials, shared by every filesystem using them. Each client
+ * owns a connection pool and threads, so sharing keeps connections warm and saves building an HTTP client and doing
+ * TLS handshakes per filesystem.
+ *
+ * Handed out by a {@link Registry}, which counts the filesystems using each instance and closes the clients when the
+ * last one releases them.
+ */
+final class S3Clients {
+    private final Key key;
+    private final AwsCredentialsProvider credentialsProvider;
+    private final MetricsInterceptor metricsInterceptor = new MetricsInterceptor();
+    private final S3Client s3;
+    private volatile S3AsyncClient s3Async;
+    // guarded by the registry
+    private int references;
+
+    private S3Clients(Key key, AwsCredentialsProvider credentialsProvider) {
+        this.key = key;
+        this.credentialsProvider = credentialsProvider;
+        S3ClientBuilder builder = S3Client.builder()
+                                          .region(key.region)
+                                          .credentialsProvider(credentialsProvider)
+                                          .serviceConfiguration(key.configuration())
+                                          .overrideConfiguration(overrideConfiguration());
+        if (key.endpoint != null)
+            builder.endpointOverride(key.endpoint);
+        this.s3 = builder.build();
+    }
+
+    private S3Clients(Key key, S3Client s3, S3AsyncClient s3Async) {
+        this.key = key;
+        this.credentialsProvider = null;
+        this.s3 = s3;
+        this.s3Async = s3Async;
+    }
+
+    /**
+     * Wraps clients built elsewhere, fakes in tests, for a single filesystem: its release closes them.
+     */
+    static S3Clients of(Region region, S3Client s3, S3AsyncClient s3Async) {
+        S3Clients clients = new S3Clients(new Key(region, null, false, "unshared"), s3, s3Async);
+        clients.references = 1;
+        return clients;
+    }
+
+    S3Client sync() {
+        return s3;
+    }
+
+    /**
+     * Created on first use since it owns its own event loop.
+     */
+    S3AsyncClient async() {
+        S3AsyncClient client = s3Async;
+        if (client != null)
+            return client;
+
+        synchronized (this) {
+            if (s3Async == null) {
+                S3AsyncClientBuilder builder = S3AsyncClient.builder()
+                                                            .region(key.region)
+                                                            .credentialsProvider(credentialsProvider)
+                                                            .serviceConfiguration(key.configuration())
+                                                            .overrideConfiguration(overrideConfiguration());
+                if (key.endpoint != null)
+                    builder.endpointOverride(key.endpoint);
+                s3Async = builder.build();
+            }
+            return s3Async;
+        }
+    }
+
+    Region region() {
+        return key.region;
+    }
+
+    /**
+     * Records the requests made for {@code bucket} into {@code metrics}, until {@link #untrack(String, S3Metrics)}.
+     */
+    void track(String bucket, S3Metrics metrics) {
+        metricsInterceptor.register(bucket, metrics);
+    }
+
+    void untrack(String bucket, S3Metrics metrics) {
+        metricsInterceptor.unregister(bucket, metrics);
+    }
+
+    private ClientOverrideConfiguration overrideConfiguration() {
+        return ClientOverrideConfiguration.builder().addExecutionInterceptor(metricsInterceptor).build();
+    }
+
+    private void close() {
+        s3.close();
+        synchronized (this) {
+            if (s3Async != null)
+                s3Async.close();
+        }
+    }
+
+    static final class Registry {
+        private final Map<Key, S3Clients> clients = new HashMap<>();
+
+        /**
+         * Returns the clients for {@code region} and the credentials identified by {@code credentialsId}, building
+         * them with {@code credentialsProvider} if nobody uses them yet. Every call must be paired with a
+         * {@link #release(S3Clients)}.
+         */
+        S3Clients acquire(Region region, String credentialsId, AwsCredentialsProvider credentialsProvider) {
+            return acquire(region, null, false, credentialsId, credentialsProvider);
+        }
+
+        /**
+         * As {@link #acquire(Region, String, AwsCredentialsProvider)}, for clients sending requests to
+         * {@code endpoint} instead of AWS when not {@code null}.
+         */
+        synchronized S3Clients acquire(Region region, URI endpoint, boolean pathStyleAccess, String credentialsId,
+                                       AwsCredentialsProvider credentialsProvider) {
+            S3Clients shared = clients.computeIfAbsent(new Key(region, endpoint, pathStyleAccess, credentialsId),
+                                                       key -> new S3Clients(key, credentialsProvider));
+            shared.references++;
+            return shared;
+        }
+
+        void release(S3Clients shared) {
+            synchronized (this) {
+                if (--shared.references > 0)
+                    return;
+                clients.remove(shared.key, shared);
+            }
+            shared.close();
+        }
+    }
+
+    private static final class Key {
+        final Region region;
+        // null for AWS
+        final URI endpoint;
+        final boolean pathStyleAccess;
+        final String credentialsId;
+
+        Key(Region region, URI endpoint, boolean pathStyleAccess, String credentialsId) {
+            this.region = region;
+            this.endpoint = endpoint;
+            this.pathStyleAccess = pathStyleAccess;
+            this.credentialsId = credentialsId;
+        }
+
+        S3Configuration configuration() {
+            return S3Configuration.builder().pathStyleAccessEnabled(pathStyleAccess).build();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key other = (Key) o;
+            return region.equals(other.region) && Objects.equals(endpoint, other.endpoint)
+                   && pathStyleAccess == other.pathStyleAccess && credentialsId.equals(other.credentialsId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(region, endpoint, pathStyleAccess, credentialsId);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lists the objects and common prefixes right under a directory with {@code /} delimited ListObjectsV2 calls.
+ *
+ * Pages are requested as the iterator gets to them, and as soon as one arrives the next one is requested in the
+ * background so the caller rarely waits on S3. At most two pages are held at a time and the filter is applied entry by
+ * entry, so memory doesn't grow with the size of the directory.
+ *
+ * A {@link #glob(S3Path, String) glob} stream lists everything under the directory without a delimiter instead, asking
+ * only for the keys that start with the literal text the glob starts with, and matches the rest of each key itself.
+ */
+final class S3DirectoryStream implements DirectoryStream<Path> {
+    private final S3Path dir;
+    private final String bucket;
+    private final String prefix;
+    // what is asked of S3, the prefix or, for a glob, a longer one
+    private final String listPrefix;
+    private final String delimiter;
+    // null unless listing for a glob, the names relative to the directory it matches
+    private final Pattern names;
+    private final Filter<? super Path> filter;
+    // passed on to the directories listed
+    private final FlatListing.Descent descent;
+    private final S3AsyncClient s3Async;
+    private final MetadataCache metadataCache;
+    private volatile CompletableFuture<ListObjectsV2Response> nextPage;
+    private boolean iteratorReturned;
+    private volatile boolean closed;
+
+    S3DirectoryStream(S3Path dir, Filter<? super Path> filter, FlatListing.Descent descent) {
+        this(dir, "", "/", null, filter, descent);
+    }
+
+    private S3DirectoryStream(S3Path dir, String literalPrefix, String delimiter, Pattern names, Filter<? super Path> filter,
+                              FlatListing.Descent descent) {
+        String key = dir.getKey();
+        this.dir = dir;
+        this.bucket = dir.getBucket();
+        this.prefix = key.isEmpty() || key.endsWith("/") ? key : key + UnixPath.SEPARATOR;
+        this.listPrefix = prefix + literalPrefix;
+        this.delimiter = delimiter;
+        this.names = names;
+        this.filter = filter;
+        this.descent = descent;
+        this.s3Async = ((S3FileSystem) dir.getFileSystem()).getS3AsyncClient();
+        this.metadataCache = ((S3FileSystem) dir.getFileSystem()).getMetadataCache();
+    }
+
+    /**
+     * Streams the files under {@code dir}, at any depth, whose path relative to {@code dir} matches {@code glob}.
+     */
+    static S3DirectoryStream glob(S3Path dir, String glob) {
+        return new S3DirectoryStream(dir, Globs.literalPrefix(glob), null, Pattern.compile(Globs.toRegex(glob)), null,
+                                     FlatListing.Descent.NONE);
+    }
+
+    @Override
+    public synchronized Iterator<Path> iterator() {
+        if (closed)
+            throw new IllegalStateException("Directory stream is closed");
+        if (iteratorReturned)
+            throw new IllegalStateException("Iterator already obtained");
+
+        iteratorReturned = true;
+        nextPage = list(null);
+        return new PathIterator();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (nextPage != null)
+            nextPage.cancel(true);
+    }
+
+    private CompletableFuture<ListObjectsV2Response> list(String continuationToken) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                                                           .bucket(bucket)
+                                                           .prefix(listPrefix)
+                                                           .delimiter(delimiter)
+                                                           .continuationToken(continuationToken)
+                                                           .build();
+        return s3Async.listObjectsV2(request);
+    }
+
+    /**
+     * Waits for the page already in flight and requests the one after it before handing it over.
+     */
+    private ListObjectsV2Response takePage() throws IOException {
+        ListObjectsV2Response page = RangeFetcher.await(nextPage);
+        synchronized (this) {
+            nextPage = Boolean.TRUE.equals(page.isTruncated()) && !closed ? list(page.nextContinuationToken()) : null;
+        }
+        return page;
+    }
+
+    private final class PathIterator implements Iterator<Path> {
+        private Iterator<S3Object> objects;
+        private Iterator<CommonPrefix> prefixes;
+        private final Matcher matcher = names == null ? null : names.matcher("");
+        private Path next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !closed) {
+                if (objects != null && objects.hasNext()) {
+                    S3Object object = objects.next();
+                    // the directory marker some tools create for the prefix itself
+                    if (!object.key().equals(prefix)) {
+                        S3ObjectMetadata metadata = S3ObjectMetadata.of(object);
+                        metadataCache.put(bucket, object.key(), metadata);
+                        next = accept(object.key(), S3Attributes.of(metadata));
+                    }
+                } else if (prefixes != null && prefixes.hasNext()) {
+                    next = accept(prefixes.next().prefix(), S3Attributes.DIRECTORY);
+                } else if (nextPage != null) {
+                    try {
+                        ListObjectsV2Response page = takePage();
+                        objects = page.contents().iterator();
+                        prefixes = page.commonPrefixes().iterator();
+                    } catch (CancellationException e) {
+                        // closed while waiting
+                        break;
+                    } catch (IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                } else {
+                    break;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Path result = next;
+            next = null;
+            return result;
+        }
+
+        private Path accept(String key, S3Attributes attributes) {
+            String name = key.substring(prefix.length());
+            if (name.endsWith("/")) {
+                // a glob only matches files, not the markers of directories
+                if (matcher != null)
+                    return null;
+                name = name.substring(0, name.length() - 1);
+            }
+            if (matcher != null && !matcher.reset(name).matches())
+                return null;
+            Path entry = dir.resolve(name, attributes, null, descent);
+            try {
+                return filter == null || filter.accept(entry) ? entry : null;
+            } catch (IOException e) {
+                throw new DirectoryIteratorException(e);
+            }
+        }
+    }
+}
@@ -3,22 +3,150 @@ package com.github.fcofdez.s3fs;
 import java.util.HashMap;
 import java.util.Map;
 
+import static com.github.fcofdez.s3fs.Util.checkArgument;
+
 public class S3FSSettings {
 
     public static final String REGION = "region";
     public static final String ACCESS_KEY = "access_key";
     public static final String SECRET_KEY = "secret_key";
+    public static final String MIN_READAHEAD = "min_readahead";
+    public static final String MAX_READAHEAD = "max_readahead";
+    public static final String MAX_STREAM_SKIP = "max_stream_skip";
+    public static final String PREFETCH_PARALLELISM = "prefetch_parallelism";
+    public static final String PREFETCH_BLOCK_SIZE = "prefetch_block_size";
+    public static final String CACHE_CAPACITY = "cache_capacity";
+    public static final String CACHE_BLOCK_SIZE = "cache_block_size";
+    public static final String DISK_CACHE_DIRECTORY = "disk_cache_directory";
+    public static final String DISK_CACHE_CAPACITY = "disk_cache_capacity";
+    public static final String VECTORED_MAX_GAP = "vectored_max_gap";
+    public static final String VECTORED_MAX_MERGED_SIZE = "vectored_max_merged_size";
+    public static final String MULTIPART_PART_SIZE = "multipart_part_size";
+    public static final String UPLOAD_PARALLELISM = "upload_parallelism";
+    public static final String BUFFER_POOL_CAPACITY = "buffer_pool_capacity";
+    public static final String COPY_PART_SIZE = "copy_part_size";
+    public static final String COPY_PARALLELISM = "copy_parallelism";
+    public static final String DELETE_PARALLELISM = "delete_parallelism";
+    public static final String LISTING_PARALLELISM = "listing_parallelism";
+    public static final String METADATA_CACHE_TTL = "metadata_cache_ttl";
+    public static final String METADATA_CACHE_CAPACITY = "metadata_cache_capacity";
+    public static final String ENDPOINT = "endpoint";
+    public static final String PATH_STYLE_ACCESS = "path_style_access";
+    public static final String HEDGED_READS = "hedged_reads";
+    public static final String HEDGING_BUDGET_PERCENT = "hedging_budget_percent";
+    public static final String LISTING_MAX_FLAT_KEYS = "listing_max_flat_keys";
+
+    static final int DEFAULT_MIN_READAHEAD = 64 * 1024;
+    static final int DEFAULT_MAX_READAHEAD = 8 * 1024 * 1024;
+    static final int DEFAULT_MAX_STREAM_SKIP = 1024 * 1024;
+    static final int DEFAULT_PREFETCH_PARALLELISM = 0;
+    static final int DEFAULT_PREFETCH_BLOCK_SIZE = 8 * 1024 * 1024;
+    static final long DEFAULT_CACHE_CAPACITY = 64L * 1024 * 1024;
+    static final int DEFAULT_CACHE_BLOCK_SIZE = 1024 * 1024;
+    static final long DEFAULT_DISK_CACHE_CAPACITY = 10L * 1024 * 1024 * 1024;
+    static final int DEFAULT_VECTORED_MAX_GAP = 64 * 1024;
+    static final int DEFAULT_VECTORED_MAX_MERGED_SIZE = 8 * 1024 * 1024;
+    static final int MIN_MULTIPART_PART_SIZE = 5 * 1024 * 1024;
+    static final int DEFAULT_MULTIPART_PART_SIZE = 8 * 1024 * 1024;
+    static final int DEFAULT_UPLOAD_PARALLELISM = 4;
+    static final long DEFAULT_BUFFER_POOL_CAPACITY = 256L * 1024 * 1024;
+    // largest object a single CopyObject accepts
+    static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+    static final long DEFAULT_COPY_PART_SIZE = 256L * 1024 * 1024;
+    static final int DEFAULT_COPY_PARALLELISM = 16;
+    static final int DEFAULT_DELETE_PARALLELISM = 8;
+    static final int DEFAULT_LISTING_PARALLELISM = 8;
+    static final long DEFAULT_METADATA_CACHE_TTL = 60_000;
+    static final int DEFAULT_METADATA_CACHE_CAPACITY = 100_000;
+    static final boolean DEFAULT_PATH_STYLE_ACCESS = false;
+    static final boolean DEFAULT_HEDGED_READS = false;
+    static final int DEFAULT_HEDGING_BUDGET_PERCENT = 5;
+    static final int DEFAULT_LISTING_MAX_FLAT_KEYS = 10_000;
 
     private final String region;
     private final String accessKey;
     private final String secretKey;
     private final String bucket;
+    private final int minReadahead;
+    private final int maxReadahead;
+    private final int maxStreamSkip;
+    private final int prefetchParallelism;
+    private final int prefetchBlockSize;
+    private final long cacheCapacity;
+    private final int cacheBlockSize;
+    private final String diskCacheDirectory;
+    private final long diskCacheCapacity;
+    private final int vectoredMaxGap;
+    private final int vectoredMaxMergedSize;
+    private final int multipartPartSize;
+    private final int uploadParallelism;
+    private final long bufferPoolCapacity;
+    private final long copyPartSize;
+    private final int copyParallelism;
+    private final int deleteParallelism;
+    private final int listingParallelism;
+    private final long metadataCacheTtl;
+    private final int metadataCacheCapacity;
+    private final String endpoint;
+    private final boolean pathStyleAccess;
+    private final boolean hedgedReads;
+    private final int hedgingBudgetPercent;
+    private final int listingMaxFlatKeys;
 
-    private S3FSSettings(String region, String accessKey, String secretKey, String bucket) {
-        this.region = region;
-        this.accessKey = accessKey;
-        this.secretKey = secretKey;
-        this.bucket = bucket;
+    private S3FSSettings(Builder builder) {
+        checkArgument(builder.minReadahead > 0 && builder.minReadahead <= builder.maxReadahead,
+                      "Readahead window must satisfy 0 < min <= max but got min=%d max=%d", builder.minReadahead, builder.maxReadahead);
+        checkArgument(builder.maxStreamSkip >= 0, "Max stream skip must be >= 0 but got %d", builder.maxStreamSkip);
+        checkArgument(builder.prefetchParallelism >= 0, "Prefetch parallelism must be >= 0 but got %d", builder.prefetchParallelism);
+        checkArgument(builder.prefetchBlockSize > 0, "Prefetch block size must be > 0 but got %d", builder.prefetchBlockSize);
+        checkArgument(builder.cacheCapacity >= 0, "Cache capacity must be >= 0 but got %d", builder.cacheCapacity);
+        checkArgument(builder.cacheBlockSize > 0, "Cache block size must be > 0 but got %d", builder.cacheBlockSize);
+        checkArgument(builder.diskCacheCapacity > 0, "Disk cache capacity must be > 0 but got %d", builder.diskCacheCapacity);
+        checkArgument(builder.vectoredMaxGap >= 0, "Vectored read gap must be >= 0 but got %d", builder.vectoredMaxGap);
+        checkArgument(builder.vectoredMaxMergedSize > 0, "Vectored read merged size must be > 0 but got %d", builder.vectoredMaxMergedSize);
+        checkArgument(builder.multipartPartSize >= MIN_MULTIPART_PART_SIZE, "Multipart part size must be >= %d but got %d", MIN_MULTIPART_PART_SIZE, builder.multipartPartSize);
+        checkArgument(builder.uploadParallelism > 0, "Upload parallelism must be > 0 but got %d", builder.uploadParallelism);
+        checkArgument(builder.bufferPoolCapacity >= BufferPool.MIN_SIZE, "Buffer pool capacity must be >= %d but got %d", BufferPool.MIN_SIZE, builder.bufferPoolCapacity);
+        checkFitsBufferPool("Max readahead", builder.maxReadahead, builder.bufferPoolCapacity);
+        checkFitsBufferPool("Prefetch block size", builder.prefetchBlockSize, builder.bufferPoolCapacity);
+        checkFitsBufferPool("Multipart part size", builder.multipartPartSize, builder.bufferPoolCapacity);
+        checkArgument(builder.copyPartSize >= MIN_MULTIPART_PART_SIZE && builder.copyPartSize <= MAX_COPY_OBJECT_SIZE, "Copy part size must be between %d and %d but got %d", MIN_MULTIPART_PART_SIZE, MAX_COPY_OBJECT_SIZE, builder.copyPartSize);
+        checkArgument(builder.copyParallelism > 0, "Copy parallelism must be > 0 but got %d", builder.copyParallelism);
+        checkArgument(builder.deleteParallelism > 0, "Delete parallelism must be > 0 but got %d", builder.deleteParallelism);
+        checkArgument(builder.listingParallelism > 0, "Listing parallelism must be > 0 but got %d", builder.listingParallelism);
+        checkArgument(builder.metadataCacheTtl >= 0, "Metadata cache TTL must be >= 0 but got %d", builder.metadataCacheTtl);
+        checkArgument(builder.metadataCacheCapacity >= 0, "Metadata cache capacity must be >= 0 but got %d", builder.metadataCacheCapacity);
+        checkArgument(builder.hedgingBudgetPercent > 0 && builder.hedgingBudgetPercent <= 100, "Hedging budget must be between 1 and 100 percent but got %d", builder.hedgingBudgetPercent);
+        checkArgument(builder.listingMaxFlatKeys > 0, "Listing max flat keys must be > 0 but got %d", builder.listingMaxFlatKeys);
+        this.region = builder.region;
+        this.accessKey = builder.accessKey;
+        this.secretKey = builder.secretKey;
+        this.bucket = builder.bucket;
+        this.minReadahead = builder.minReadahead;
+        this.maxReadahead = builder.maxReadahead;
+        this.maxStreamSkip = builder.maxStreamSkip;
+        this.prefetchParallelism = builder.prefetchParallelism;
+        this.prefetchBlockSize = builder.prefetchBlockSize;
+        this.cacheCapacity = builder.cacheCapacity;
+        this.cacheBlockSize = builder.cacheBlockSize;
+        this.diskCacheDirectory = builder.diskCacheDirectory;
+        this.diskCacheCapacity = builder.diskCacheCapacity;
+        this.vectoredMaxGap = builder.vectoredMaxGap;
+        this.vectoredMaxMergedSize = builder.vectoredMaxMergedSize;
+        this.multipartPartSize = builder.multipartPartSize;
+        this.uploadParallelism = builder.uploadParallelism;
+        this.bufferPoolCapacity = builder.bufferPoolCapacity;
+        this.copyPartSize = builder.copyPartSize;
+        this.copyParallelism = builder.copyParallelism;
+        this.deleteParallelism = builder.deleteParallelism;
+        this.listingParallelism = builder.listingParallelism;
+        this.metadataCacheTtl = builder.metadataCacheTtl;
+        this.metadataCacheCapacity = builder.metadataCacheCapacity;
+        this.endpoint = builder.endpoint;
+        this.pathStyleAccess = builder.pathStyleAccess;
+        this.hedgedReads = builder.hedgedReads;
+        this.hedgingBudgetPercent = builder.hedgingBudgetPercent;
+        this.listingMaxFlatKeys = builder.listingMaxFlatKeys;
     }
 
     public static Builder builder()
@@ -26,13 +154,114 @@ public class S3FSSettings {
         return new Builder();
     }
 
+    static S3FSSettings fromEnv(Map<String, ?> env)
+    {
+        return builder().setRegion((String) env.get(REGION))
+                        .setAccessKey((String) env.get(ACCESS_KEY))
+                        .setSecretKey((String) env.get(SECRET_KEY))
+                        .setMinReadahead(intValue(env, MIN_READAHEAD, DEFAULT_MIN_READAHEAD))
+                        .setMaxReadahead(intValue(env, MAX_READAHEAD, DEFAULT_MAX_READAHEAD))
+                        .setMaxStreamSkip(intValue(env, MAX_STREAM_SKIP, DEFAULT_MAX_STREAM_SKIP))
+                        .setPrefetchParallelism(intValue(env, PREFETCH_PARALLELISM, DEFAULT_PREFETCH_PARALLELISM))
+                        .setPrefetchBlockSize(intValue(env, PREFETCH_BLOCK_SIZE, DEFAULT_PREFETCH_BLOCK_SIZE))
+                        .setCacheCapacity(longValue(env, CACHE_CAPACITY, DEFAULT_CACHE_CAPACITY))
+                        .setCacheBlockSize(intValue(env, CACHE_BLOCK_SIZE, DEFAULT_CACHE_BLOCK_SIZE))
+                        .setDiskCacheDirectory((String) env.get(DISK_CACHE_DIRECTORY))
+                        .setDiskCacheCapacity(longValue(env, DISK_CACHE_CAPACITY, DEFAULT_DISK_CACHE_CAPACITY))
+                        .setVectoredMaxGap(intValue(env, VECTORED_MAX_GAP, DEFAULT_VECTORED_MAX_GAP))
+                        .setVectoredMaxMergedSize(intValue(env, VECTORED_MAX_MERGED_SIZE, DEFAULT_VECTORED_MAX_MERGED_SIZE))
+                        .setMultipartPartSize(intValue(env, MULTIPART_PART_SIZE, DEFAULT_MULTIPART_PART_SIZE))
+                        .setUploadParallelism(intValue(env, UPLOAD_PARALLELISM, DEFAULT_UPLOAD_PARALLELISM))
+                        .setBufferPoolCapacity(longValue(env, BUFFER_POOL_CAPACITY, DEFAULT_BUFFER_POOL_CAPACITY))
+                        .setCopyPartSize(longValue(env, COPY_PART_SIZE, DEFAULT_COPY_PART_SIZE))
+                        .setCopyParallelism(intValue(env, COPY_PARALLELISM, DEFAULT_COPY_PARALLELISM))
+                        .setDeleteParallelism(intValue(env, DELETE_PARALLELISM, DEFAULT_DELETE_PARALLELISM))
+                        .setListingParallelism(intValue(env, LISTING_PARALLELISM, DEFAULT_LISTING_PARALLELISM))
+                        .setMetadataCacheTtl(longValue(env, METADATA_CACHE_TTL, DEFAULT_METADATA_CACHE_TTL))
+                        .setMetadataCacheCapacity(intValue(env, METADATA_CACHE_CAPACITY, DEFAULT_METADATA_CACHE_CAPACITY))
+                        .setEndpoint((String) env.get(ENDPOINT))
+                        .setPathStyleAccess(booleanValue(env, PATH_STYLE_ACCESS, DEFAULT_PATH_STYLE_ACCESS))
+                        .setHedgedReads(booleanValue(env, HEDGED_READS, DEFAULT_HEDGED_READS))
+                        .setHedgingBudgetPercent(intValue(env, HEDGING_BUDGET_PERCENT, DEFAULT_HEDGING_BUDGET_PERCENT))
+                        .setListingMaxFlatKeys(intValue(env, LISTING_MAX_FLAT_KEYS, DEFAULT_LISTING_MAX_FLAT_KEYS))
+                        .createS3FSSettings();
+    }
+
+    /**
+     * Channels stage a whole readahead window, prefetch block or part in one pooled buffer, rounded up to the pool's
+     * size classes, so one that can never fit would have them fail on every read or write.
+     */
+    private static void checkFitsBufferPool(String name, int size, long bufferPoolCapacity)
+    {
+        checkArgument(BufferPool.bufferCapacity(size) <= bufferPoolCapacity,
+                      "%s of %d bytes takes a %d byte buffer, more than the buffer pool capacity of %d bytes", name, size,
+                      BufferPool.bufferCapacity(size), bufferPoolCapacity);
+    }
+
+    private static int intValue(Map<String, ?> env, String name, int defaultValue)
+    {
+        return (int) longValue(env, name, defaultValue);
+    }
+
+    private static long longValue(Map<String, ?> env, String name, long defaultValue)
+    {
+        Object value = env.get(name);
+        if (value == null)
+            return defaultValue;
+
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+
+        return Long.parseLong(value.toString());
+    }
+
+    private static boolean booleanValue(Map<String, ?> env, String name, boolean defaultValue)
+    {
+        Object value = env.get(name);
+        if (value == null)
+            return defaultValue;
+
+        if (value instanceof Boolean)
+            return (Boolean) value;
+
+        return Boolean.parseBoolean(value.toString());
+    }
+
     public static class Builder
     {
         private String region;
         private String accessKey;
         private String secretKey;
         private String bucket;
+        private int minReadahead = DEFAULT_MIN_READAHEAD;
+        private int maxReadahead = DEFAULT_MAX_READAHEAD;
+        private int maxStreamSkip = DEFAULT_MAX_STREAM_SKIP;
+        private int prefetchParallelism = DEFAULT_PREFETCH_PARALLELISM;
+        private int prefetchBlockSize = DEFAULT_PREFETCH_BLOCK_SIZE;
+        private long cacheCapacity = DEFAULT_CACHE_CAPACITY;
+        private int cacheBlockSize = DEFAULT_CACHE_BLOCK_SIZE;
+        private String diskCacheDirectory;
+        private long diskCacheCapacity = DEFAULT_DISK_CACHE_CAPACITY;
+        private int vectoredMaxGap = DEFAULT_VECTORED_MAX_GAP;
+        private int vectoredMaxMergedSize = DEFAULT_VECTORED_MAX_MERGED_SIZE;
+        private int multipartPartSize = DEFAULT_MULTIPART_PART_SIZE;
+        private int uploadParallelism = DEFAULT_UPLOAD_PARALLELISM;
+        private long bufferPoolCapacity = DEFAULT_BUFFER_POOL_CAPACITY;
+        private long copyPartSize = DEFAULT_COPY_PART_SIZE;
+        private int copyParallelism = DEFAULT_COPY_PARALLELISM;
+        private int deleteParallelism = DEFAULT_DELETE_PARALLELISM;
+        private int listingParallelism = DEFAULT_LISTING_PARALLELISM;
+        private long metadataCacheTtl = DEFAULT_METADATA_CACHE_TTL;
+        private int metadataCacheCapacity = DEFAULT_METADATA_CACHE_CAPACITY;
+        private String endpoint;
+        private boolean pathStyleAccess = DEFAULT_PATH_STYLE_ACCESS;
+        private boolean hedgedReads = DEFAULT_HEDGED_READS;
+        private int hedgingBudgetPercent = DEFAULT_HEDGING_BUDGET_PERCENT;
+        private int listingMaxFlatKeys = DEFAULT_LISTING_MAX_FLAT_KEYS;
 
+        /**
+         * Region of the bucket. When not set it's looked up with HeadBucket the first time the bucket is used.
+         */
         public Builder setRegion(String region) {
             this.region = region;
             return this;
@@ -53,17 +282,367 @@ public class S3FSSettings {
             return this;
         }
 
+        /**
+         * Size of the first ranged GET issued by a channel, and the size it falls back to on random access.
+         */
+        public Builder setMinReadahead(int minReadahead) {
+            this.minReadahead = minReadahead;
+            return this;
+        }
+
+        /**
+         * Upper bound the readahead window grows to while a channel is read sequentially.
+         */
+        public Builder setMaxReadahead(int maxReadahead) {
+            this.maxReadahead = maxReadahead;
+            return this;
+        }
+
+        /**
+         * Largest forward seek served by skipping bytes on an open sequential stream instead of issuing a new GET.
+         */
+        public Builder setMaxStreamSkip(int maxStreamSkip) {
+            this.maxStreamSkip = maxStreamSkip;
+            return this;
+        }
+
+        /**
+         * Number of ranged GETs kept in flight ahead of a sequential reader through the async client. {@code 0}
+         * disables prefetching and sequential reads use a single stream instead.
+         */
+        public Builder setPrefetchParallelism(int prefetchParallelism) {
+            this.prefetchParallelism = prefetchParallelism;
+            return this;
+        }
+
+        /**
+         * Size of each prefetched range. A reader holds at most {@code parallelism * blockSize} bytes in flight.
+         */
+        public Builder setPrefetchBlockSize(int prefetchBlockSize) {
+            this.prefetchBlockSize = prefetchBlockSize;
+            return this;
+        }
+
+        /**
+         * Bytes of off-heap memory the filesystem block cache may hold. {@code 0} disables the cache.
+         */
+        public Builder setCacheCapacity(long cacheCapacity) {
+            this.cacheCapacity = cacheCapacity;
+            return this;
+        }
+
+        /**
+         * Granularity of the block cache. Reads through the cache are aligned to this size.
+         */
+        public Builder setCacheBlockSize(int cacheBlockSize) {
+            this.cacheBlockSize = cacheBlockSize;
+            return this;
+        }
+
+        /**
+         * Local directory for the persistent block cache tier. Unset by default, which disables it.
+         */
+        public Builder setDiskCacheDirectory(String diskCacheDirectory) {
+            this.diskCacheDirectory = diskCacheDirectory;
+            return this;
+        }
+
+        /**
+         * Bytes the persistent block cache may use on disk.
+         */
+        public Builder setDiskCacheCapacity(long diskCacheCapacity) {
+            this.diskCacheCapacity = diskCacheCapacity;
+            return this;
+        }
+
+        /**
+         * Ranges of a vectored read closer than this many bytes are fetched with a single GET.
+         */
+        public Builder setVectoredMaxGap(int vectoredMaxGap) {
+            this.vectoredMaxGap = vectoredMaxGap;
+            return this;
+        }
+
+        /**
+         * Upper bound on the size of a GET built by merging vectored read ranges.
+         */
+        public Builder setVectoredMaxMergedSize(int vectoredMaxMergedSize) {
+            this.vectoredMaxMergedSize = vectoredMaxMergedSize;
+            return this;
+        }
+
+        /**
+         * Size of each part of a multipart upload, S3 requires at least 5 MB. Objects written through a channel that stay
+         * under it go up with a single PUT.
+         */
+        public Builder setMultipartPartSize(int multipartPartSize) {
+            this.multipartPartSize = multipartPartSize;
+            return this;
+        }
+
+        /**
+         * Number of parts a writing channel uploads concurrently. A writer holds at most {@code parallelism + 1} parts in
+         * memory and blocks while that many are pending.
+         */
+        public Builder setUploadParallelism(int uploadParallelism) {
+            this.uploadParallelism = uploadParallelism;
+            return this;
+        }
+
+        /**
+         * Hard cap on the direct memory all channels of the filesystem stage reads and writes in. Channels wait for memory
+         * to be released rather than allocating past it. Must fit a buffer of the max readahead, prefetch block size and
+         * multipart part size, each rounded up to a power of two.
+         */
+        public Builder setBufferPoolCapacity(long bufferPoolCapacity) {
+            this.bufferPoolCapacity = bufferPoolCapacity;
+            return this;
+        }
+
+        /**
+         * Objects larger than this are copied server side in parts of this size with UploadPartCopy instead of a single
+         * CopyObject.
+         */
+        public Builder setCopyPartSize(long copyPartSize) {
+            this.copyPartSize = copyPartSize;
+            return this;
+        }
+
+        /**
+         * Number of UploadPartCopy requests a single copy keeps in flight.
+         */
+        public Builder setCopyParallelism(int copyParallelism) {
+            this.copyParallelism = copyParallelism;
+            return this;
+        }
+
+        /**
+         * Number of DeleteObjects batches, of up to 1000 keys each, a bulk delete keeps in flight.
+         */
+        public Builder setDeleteParallelism(int deleteParallelism) {
+            this.deleteParallelism = deleteParallelism;
+            return this;
+        }
+
+        /**
+         * Maximum number of first level prefixes of a walked subtree listed concurrently. With 1 the subtree is listed
+         * in a single flat listing instead.
+         */
+        public Builder setListingParallelism(int listingParallelism) {
+            this.listingParallelism = listingParallelism;
+            return this;
+        }
+
+        /**
+         * Milliseconds object sizes, ETags and other attributes learnt from listings, HEADs and GETs are trusted for. Bounds
+         * how long a change made through another client can go unnoticed.
+         */
+        public Builder setMetadataCacheTtl(long metadataCacheTtl) {
+            this.metadataCacheTtl = metadataCacheTtl;
+            return this;
+        }
+
+        /**
+         * Maximum number of objects whose attributes are cached, 0 disables the cache.
+         */
+        public Builder setMetadataCacheCapacity(int metadataCacheCapacity) {
+            this.metadataCacheCapacity = metadataCacheCapacity;
+            return this;
+        }
+
+        /**
+         * Endpoint requests go to instead of AWS, such as a local S3 compatible server. When set and no region is given,
+         * the region isn't looked up, the endpoint serves every bucket itself.
+         */
+        public Builder setEndpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        /**
+         * Addresses buckets in the path, {@code endpoint/bucket/key}, rather than in the host name. Servers other than S3
+         * often only support this form.
+         */
+        public Builder setPathStyleAccess(boolean pathStyleAccess) {
+            this.pathStyleAccess = pathStyleAccess;
+            return this;
+        }
+
+        /**
+         * Duplicates a ranged GET that hasn't responded within the 95th percentile of recent response times and keeps
+         * whichever copy finishes first, cutting the tail latency of random reads and prefetched blocks. Off by default.
+         */
+        public Builder setHedgedReads(boolean hedgedReads) {
+            this.hedgedReads = hedgedReads;
+            return this;
+        }
+
+        /**
+         * Extra GETs hedging may issue, as a percentage of the ranged GETs it watches. Once spent no GET is
+         * duplicated until enough new ones have been issued.
+         */
+        public Builder setHedgingBudgetPercent(int hedgingBudgetPercent) {
+            this.hedgingBudgetPercent = hedgingBudgetPercent;
+            return this;
+        }
+
+        /**
+         * Most keys a subtree may hold to be listed flat into memory when a walk descends into it. Larger subtrees are
+         * listed a level at a time instead.
+         */
+        public Builder setListingMaxFlatKeys(int listingMaxFlatKeys) {
+            this.listingMaxFlatKeys = listingMaxFlatKeys;
+            return this;
+        }
+
         public S3FSSettings createS3FSSettings() {
-            return new S3FSSettings(region, accessKey, secretKey, bucket);
+            return new S3FSSettings(this);
         }
     }
 
+    public String getRegion() {
+        return region;
+    }
+
+    public String getAccessKey() {
+        return accessKey;
+    }
+
+    public String getSecretKey() {
+        return secretKey;
+    }
+
+    public int getMinReadahead() {
+        return minReadahead;
+    }
+
+    public int getMaxReadahead() {
+        return maxReadahead;
+    }
+
+    public int getMaxStreamSkip() {
+        return maxStreamSkip;
+    }
+
+    public int getPrefetchParallelism() {
+        return prefetchParallelism;
+    }
+
+    public int getPrefetchBlockSize() {
+        return prefetchBlockSize;
+    }
+
+    public long getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public int getCacheBlockSize() {
+        return cacheBlockSize;
+    }
+
+    public String getDiskCacheDirectory() {
+        return diskCacheDirectory;
+    }
+
+    public long getDiskCacheCapacity() {
+        return diskCacheCapacity;
+    }
+
+    public int getVectoredMaxGap() {
+        return vectoredMaxGap;
+    }
+
+    public int getVectoredMaxMergedSize() {
+        return vectoredMaxMergedSize;
+    }
+
+    public int getMultipartPartSize() {
+        return multipartPartSize;
+    }
+
+    public int getUploadParallelism() {
+        return uploadParallelism;
+    }
+
+    public long getBufferPoolCapacity() {
+        return bufferPoolCapacity;
+    }
+
+    public long getCopyPartSize() {
+        return copyPartSize;
+    }
+
+    public int getCopyParallelism() {
+        return copyParallelism;
+    }
+
+    public int getDeleteParallelism() {
+        return deleteParallelism;
+    }
+
+    public int getListingParallelism() {
+        return listingParallelism;
+    }
+
+    public long getMetadataCacheTtl() {
+        return metadataCacheTtl;
+    }
+
+    public int getMetadataCacheCapacity() {
+        return metadataCacheCapacity;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public boolean isPathStyleAccess() {
+        return pathStyleAccess;
+    }
+
+    public boolean isHedgedReads() {
+        return hedgedReads;
+    }
+
+    public int getHedgingBudgetPercent() {
+        return hedgingBudgetPercent;
+    }
+
+    public int getListingMaxFlatKeys() {
+        return listingMaxFlatKeys;
+    }
+
     public Map<String, ?> env()
     {
         Map<String, Object> env = new HashMap<>();
         env.put(REGION, region);
         env.put(ACCESS_KEY, accessKey);
         env.put(SECRET_KEY, secretKey);
+        env.put(MIN_READAHEAD, minReadahead);
+        env.put(MAX_READAHEAD, maxReadahead);
+        env.put(MAX_STREAM_SKIP, maxStreamSkip);
+        env.put(PREFETCH_PARALLELISM, prefetchParallelism);
+        env.put(PREFETCH_BLOCK_SIZE, prefetchBlockSize);
+        env.put(CACHE_CAPACITY, cacheCapacity);
+        env.put(CACHE_BLOCK_SIZE, cacheBlockSize);
+        env.put(DISK_CACHE_DIRECTORY, diskCacheDirectory);
+        env.put(DISK_CACHE_CAPACITY, diskCacheCapacity);
+        env.put(VECTORED_MAX_GAP, vectoredMaxGap);
+        env.put(VECTORED_MAX_MERGED_SIZE, vectoredMaxMergedSize);
+        env.put(MULTIPART_PART_SIZE, multipartPartSize);
+        env.put(UPLOAD_PARALLELISM, uploadParallelism);
+        env.put(BUFFER_POOL_CAPACITY, bufferPoolCapacity);
+        env.put(COPY_PART_SIZE, copyPartSize);
+        env.put(COPY_PARALLELISM, copyParallelism);
+        env.put(DELETE_PARALLELISM, deleteParallelism);
+        env.put(LISTING_PARALLELISM, listingParallelism);
+        env.put(METADATA_CACHE_TTL, metadataCacheTtl);
+        env.put(METADATA_CACHE_CAPACITY, metadataCacheCapacity);
+        env.put(ENDPOINT, endpoint);
+        env.put(PATH_STYLE_ACCESS, pathStyleAccess);
+        env.put(HEDGED_READS, hedgedReads);
+        env.put(HEDGING_BUDGET_PERCENT, hedgingBudgetPercent);
+        env.put(LISTING_MAX_FLAT_KEYS, listingMaxFlatKeys);
         return env;
     }
 }
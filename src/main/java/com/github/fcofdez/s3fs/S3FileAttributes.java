@@ -1,7 +1,18 @@
 package com.github.fcofdez.s3fs;
 
 import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
 
+/**
+ * Attributes of an S3 object. Directories, which are only prefixes, have no ETag nor storage class.
+ */
 public interface S3FileAttributes extends BasicFileAttributes {
+    /**
+     * The ETag of the object version these attributes describe, {@code null} for a directory.
+     */
+    String eTag();
+
+    /**
+     * The storage class of the object, {@code null} for a directory and for objects S3 didn't report one for.
+     */
+    String storageClass();
 }
@@ -1,59 +1,150 @@
 package com.github.fcofdez.s3fs;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.nio.file.*;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
 
 public class S3FileSystem extends FileSystem {
 
     private static final String SEPARATOR = "" + UnixPath.SEPARATOR;
 
-    private final FileSystemProvider provider;
+    // identifies the default credential chain in the client registry
+    private static final String DEFAULT_CREDENTIALS = "default";
+
+    private final S3FileSystemProvider provider;
+    private final String bucket;
+    private final S3Clients clients;
     private final S3Client s3;
+    private final S3FSSettings settings;
+    private final BlockCache blockCache;
+    private final BufferPool bufferPool;
+    private final MetadataCache metadataCache;
+    private final S3Metrics metrics;
+    // null when hedged reads are off
+    private final Hedging hedging;
+    // null if another filesystem of the same bucket, from another provider, holds the name
+    private final ObjectName metricsName;
     private volatile boolean closed;
 
-    private S3FileSystem(FileSystemProvider provider, S3Client s3) {
+    S3FileSystem(S3FileSystemProvider provider, String bucket, S3Clients clients, S3FSSettings settings)
+            throws IOException {
         this.provider = provider;
-        this.s3 = s3;
+        this.bucket = bucket;
+        this.clients = clients;
+        this.s3 = clients.sync();
+        this.settings = settings;
+        this.blockCache = createBlockCache(settings);
+        this.bufferPool = new BufferPool(settings.getBufferPoolCapacity());
+        this.metadataCache = new MetadataCache(settings.getMetadataCacheTtl(), settings.getMetadataCacheCapacity());
+        this.metrics = new S3Metrics(blockCache, metadataCache);
+        this.hedging = settings.isHedgedReads() ? new Hedging(settings.getHedgingBudgetPercent(), metrics) : null;
+        clients.track(bucket, metrics);
+        this.metricsName = registerMetrics(bucket, metrics);
     }
 
-    static S3FileSystem withEnv(Map<String, ?> env, S3FileSystemProvider s3FileSystemProvider) {
+    private static ObjectName registerMetrics(String bucket, S3Metrics metrics) {
+        try {
+            ObjectName name = new ObjectName("com.github.fcofdez.s3fs:type=S3FileSystem,bucket=" + ObjectName.quote(bucket));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            return null;
+        }
+    }
 
-        AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create((String) env.get(S3FSSettings.ACCESS_KEY),
-                                                                             (String) env.get(S3FSSettings.SECRET_KEY));
-        StaticCredentialsProvider staticCredentialsProvider =
-                StaticCredentialsProvider.create(awsBasicCredentials);
+    /**
+     * Builds a filesystem on the shared clients of {@code region}, or of the bucket's own region when {@code null}. A
+     * custom endpoint serves every bucket itself, so its region is never looked up.
+     */
+    private static S3FileSystem create(S3FileSystemProvider provider, String bucket, Region region, String credentialsId,
+                                       AwsCredentialsProvider credentialsProvider, S3FSSettings settings)
+            throws IOException {
+        S3Clients.Registry registry = provider.getClientRegistry();
+        URI endpoint = settings.getEndpoint() == null ? null : URI.create(settings.getEndpoint());
+        boolean pathStyle = settings.isPathStyleAccess();
+        if (region == null)
+            region = endpoint == null ? provider.getBucketRegions().get(bucket) : BucketRegions.LOOKUP_REGION;
 
-        S3Client s3 = S3Client.builder()
-                              .region(Region.of((String) env.get(S3FSSettings.REGION)))
-                              .credentialsProvider(staticCredentialsProvider)
-                              .build();
+        S3Clients clients;
+        if (region != null) {
+            clients = registry.acquire(region, endpoint, pathStyle, credentialsId, credentialsProvider);
+        } else {
+            // released only after acquiring the bucket's clients, so they aren't rebuilt when the regions match
+            S3Clients lookup = registry.acquire(BucketRegions.LOOKUP_REGION, credentialsId, credentialsProvider);
+            try {
+                region = provider.getBucketRegions().lookup(bucket, lookup.sync());
+                clients = registry.acquire(region, null, pathStyle, credentialsId, credentialsProvider);
+            } finally {
+                registry.release(lookup);
+            }
+        }
 
-        return new S3FileSystem(s3FileSystemProvider, s3);
+        try {
+            return new S3FileSystem(provider, bucket, clients, settings);
+        } catch (IOException | RuntimeException e) {
+            provider.getClientRegistry().release(clients);
+            throw e;
+        }
     }
 
-    static S3FileSystem withDynamicCredentials(S3FileSystemProvider s3FileSystemProvider) {
-        DefaultCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
-        // extract region from uri
+    private static BlockCache createBlockCache(S3FSSettings settings) throws IOException {
+        DiskBlockCache disk = null;
+        if (settings.getDiskCacheDirectory() != null)
+            disk = new DiskBlockCache(Paths.get(settings.getDiskCacheDirectory()), settings.getDiskCacheCapacity());
+
+        if (settings.getCacheCapacity() == 0 && disk == null)
+            return null;
+
+        return new BlockCache(settings.getCacheBlockSize(), settings.getCacheCapacity(), disk);
+    }
+
+    static S3FileSystem withEnv(String bucket, Map<String, ?> env, S3FileSystemProvider s3FileSystemProvider) throws IOException {
+        S3FSSettings settings = S3FSSettings.fromEnv(env);
+
+        AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create(settings.getAccessKey(),
+                                                                             settings.getSecretKey());
+        StaticCredentialsProvider staticCredentialsProvider =
+                StaticCredentialsProvider.create(awsBasicCredentials);
 
-        S3Client s3 = S3Client.builder()
-                              .region(Region.US_EAST_1)
-                              .credentialsProvider(credentialsProvider)
-                              .build();
-        return new S3FileSystem(s3FileSystemProvider, s3);
+        // the secret is part of the identity, the same access key may come with a rotated secret
+        String credentialsId = settings.getAccessKey() + ':' + settings.getSecretKey();
+        Region region = settings.getRegion() == null ? null : Region.of(settings.getRegion());
+        return create(s3FileSystemProvider, bucket, region, credentialsId, staticCredentialsProvider, settings);
+    }
+
+    static S3FileSystem withDynamicCredentials(String bucket, S3FileSystemProvider s3FileSystemProvider) {
+        try {
+            return create(s3FileSystemProvider, bucket, null, DEFAULT_CREDENTIALS,
+                          DefaultCredentialsProvider.create(), S3FSSettings.builder().createS3FSSettings());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
@@ -61,13 +152,32 @@ public class S3FileSystem extends FileSystem {
         return provider;
     }
 
+    /**
+     * Closes this filesystem and, if no other filesystem shares them, its clients. A later lookup of the same bucket
+     * creates a new filesystem.
+     */
     @Override
     public void close() throws IOException {
-        if (closed)
-            return;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
 
-        closed = true;
-        s3.close();
+        provider.fileSystemClosed(this);
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        clients.untrack(bucket, metrics);
+        if (hedging != null)
+            hedging.close();
+        if (blockCache != null)
+            blockCache.close();
+        provider.getClientRegistry().release(clients);
     }
 
     @Override
@@ -105,9 +215,31 @@ public class S3FileSystem extends FileSystem {
         return S3Path.createPath(this, first, more);
     }
 
+    /**
+     * Supports the {@code glob} and {@code regex} syntaxes. The pattern is compiled once, here, and globs without any
+     * wildcard are compared as plain text.
+     */
     @Override
     public PathMatcher getPathMatcher(String syntaxAndPattern) {
-        return null;
+        int colon = syntaxAndPattern.indexOf(':');
+        checkArgument(colon > 0, "Expected syntax:pattern but got '%s'", syntaxAndPattern);
+        String syntax = syntaxAndPattern.substring(0, colon);
+        String pattern = syntaxAndPattern.substring(colon + 1);
+
+        String regex;
+        if (syntax.equalsIgnoreCase("glob")) {
+            if (Globs.isLiteral(pattern)) {
+                String literal = Globs.literalPrefix(pattern);
+                return path -> path.toString().equals(literal);
+            }
+            regex = Globs.toRegex(pattern);
+        } else if (syntax.equalsIgnoreCase("regex")) {
+            regex = pattern;
+        } else {
+            throw new UnsupportedOperationException("Syntax '" + syntax + "' not recognized");
+        }
+        Pattern compiled = Pattern.compile(regex);
+        return path -> compiled.matcher(path.toString()).matches();
     }
 
     @Override
@@ -123,4 +255,150 @@ public class S3FileSystem extends FileSystem {
     public S3Client getS3Client() {
         return s3;
     }
+
+    /**
+     * Async client used for parallel ranged reads. Created on first use since it owns its own event loop.
+     */
+    public S3AsyncClient getS3AsyncClient() {
+        return clients.async();
+    }
+
+    /**
+     * The bucket this filesystem was opened for.
+     */
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * The region requests go to, the bucket's own unless {@link S3FSSettings#getRegion()} says otherwise.
+     */
+    public Region getRegion() {
+        return clients.region();
+    }
+
+    /**
+     * Block cache shared by the channels of this filesystem, {@code null} when disabled.
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Streams the files under {@code dir}, at any depth, whose path relative to {@code dir} matches {@code glob}, as in
+     * {@code logs/2026-10-*}{@code /part-*.gz}. Only the keys starting with the literal text before the first wildcard,
+     * {@code logs/2026-10-} there, are listed; the rest of the glob is matched as keys arrive. Unlike
+     * {@link Files#newDirectoryStream(Path, String)}, which only sees names right under {@code dir}, the glob may span
+     * directories with {@code /} and {@code **}.
+     */
+    public DirectoryStream<Path> find(Path dir, String glob) {
+        return S3DirectoryStream.glob(toS3Path(dir), glob);
+    }
+
+    /**
+     * Deletes {@code dir} and every object under it. Keys are streamed from the listing into batched, concurrent
+     * DeleteObjects requests; keys S3 refused to delete are listed in the report rather than failing the whole call.
+     */
+    public DeleteReport deleteRecursively(Path dir) throws IOException {
+        S3Path s3Path = toS3Path(dir);
+        BulkDelete delete = new BulkDelete(this);
+        String key = s3Path.getKey();
+        if (!key.isEmpty() && objectExists(s3Path.getBucket(), key))
+            delete.add(s3Path.getBucket(), key);
+        delete.addPrefix(s3Path.getBucket(), key.isEmpty() || key.endsWith(SEPARATOR) ? key : key + SEPARATOR);
+        return delete.finish();
+    }
+
+    /**
+     * Deletes every one of {@code paths}, as {@link #deleteRecursively(Path)} does without listing anything. Missing
+     * objects are not reported.
+     */
+    public DeleteReport deleteAll(Iterable<? extends Path> paths) throws IOException {
+        BulkDelete delete = new BulkDelete(this);
+        for (Path path : paths) {
+            S3Path s3Path = toS3Path(path);
+            delete.add(s3Path.getBucket(), s3Path.getKey());
+        }
+        return delete.finish();
+    }
+
+    private S3Path toS3Path(Path path) {
+        if (!(path instanceof S3Path) || path.getFileSystem() != this)
+            throw new ProviderMismatchException("Expected a path of " + this + " but got " + path);
+        return (S3Path) path;
+    }
+
+    boolean objectExists(String bucket, String key) {
+        try {
+            s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Answers from the metadata cache when it can and with a HEAD otherwise. Listings cache what they learn about every
+     * object, so walking a tree and reading the attributes of every file this way makes no HEAD at all. Once those
+     * entries expire the object is asked again: what the listing said about files is never used past the cache TTL.
+     * Directories, which no request would tell more about, keep the attributes the listing gave them.
+     */
+    S3Attributes readAttributes(S3Path path) throws IOException {
+        S3Attributes listed = path.getAttributes();
+        if (listed != null && listed.isDirectory())
+            return listed;
+
+        String key = path.getKey();
+        if (key.isEmpty())
+            return S3Attributes.DIRECTORY;
+
+        S3ObjectMetadata cached = metadataCache.get(path.getBucket(), key);
+        if (cached != null)
+            return S3Attributes.of(cached);
+
+        try {
+            HeadObjectResponse response = s3.headObject(HeadObjectRequest.builder().bucket(path.getBucket()).key(key).build());
+            S3ObjectMetadata metadata = S3ObjectMetadata.of(response);
+            metadataCache.put(path.getBucket(), key, metadata);
+            return S3Attributes.of(metadata);
+        } catch (NoSuchKeyException e) {
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                                                               .bucket(path.getBucket())
+                                                               .prefix(key.endsWith(SEPARATOR) ? key : key + SEPARATOR)
+                                                               .maxKeys(1)
+                                                               .build();
+            if (s3.listObjectsV2(request).contents().isEmpty())
+                throw new NoSuchFileException(path.toString());
+            return S3Attributes.DIRECTORY;
+        }
+    }
+
+    /**
+     * Requests, bytes, latencies and cache efficiency of this filesystem, also exposed over JMX.
+     */
+    public S3Metrics getMetrics() {
+        return metrics;
+    }
+
+    MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * {@code null} unless {@link S3FSSettings#isHedgedReads()}.
+     */
+    Hedging getHedging() {
+        return hedging;
+    }
+
+    /**
+     * Staging buffers shared by the channels of this filesystem, its occupancy tells how much memory they use.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public S3FSSettings getSettings() {
+        return settings;
+    }
 }
@@ -1,6 +1,11 @@
 package com.github.fcofdez.s3fs;
 
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.SeekableByteChannel;
@@ -10,11 +15,14 @@ import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.github.fcofdez.s3fs.Util.checkArgument;
 import static com.github.fcofdez.s3fs.Util.nullOrEmpty;
@@ -23,55 +31,114 @@ public class S3FileSystemProvider extends FileSystemProvider {
 
     private static final String S3_SCHEME = "s3";
 
-    private final ConcurrentMap<URI, S3FileSystem> fileSystems = new ConcurrentHashMap<>();
+    // one filesystem per bucket, whatever object a URI points at
+    private final ConcurrentMap<String, S3FileSystem> fileSystems = new ConcurrentHashMap<>();
+    private final S3Clients.Registry clientRegistry = new S3Clients.Registry();
+    private final BucketRegions bucketRegions = new BucketRegions();
+    // runs the completion handlers of asynchronous channels opened without an executor, the SDK threads completing the
+    // reads belong to clients other filesystems share
+    private final ExecutorService completionExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "s3fs-completion");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public String getScheme() {
         return S3_SCHEME;
     }
 
+    /**
+     * Creates the filesystem of the bucket {@code uri} names. Throws {@link FileSystemAlreadyExistsException} if the
+     * bucket already has one open, created by an earlier call or implicitly by {@link #getPath(URI)}.
+     */
     @Override
     public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
-        S3FileSystem fs = fileSystems.get(uri);
-
-        if (fs != null)
-            return fs;
-
-        checkArgument(uri.getScheme().equalsIgnoreCase(S3_SCHEME), "S3 nio FS expects '%s' scheme but got '%s'", S3_SCHEME, uri.getScheme());
-
+        String bucket = bucketOf(uri);
         checkArgument(uri.getPort() == -1 && nullOrEmpty(uri.getFragment()) && nullOrEmpty(uri.getQuery()) && nullOrEmpty(uri.getUserInfo()));
 
-        String bucket = uri.getHost();
-
-        S3FileSystem s3FileSystem = S3FileSystem.withEnv(env, this);
-
-        fileSystems.put(uri, s3FileSystem);
-        return s3FileSystem;
+        // built while holding the bucket's slot, so concurrent calls don't each build clients only to throw them away
+        S3FileSystem[] created = new S3FileSystem[1];
+        try {
+            fileSystems.computeIfAbsent(bucket, b -> {
+                try {
+                    return created[0] = S3FileSystem.withEnv(b, env, this);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (created[0] == null)
+            throw new FileSystemAlreadyExistsException(uri.toString());
+        return created[0];
     }
 
     @Override
     public FileSystem getFileSystem(URI uri) {
-        return fileSystems.get(uri);
+        S3FileSystem fileSystem = fileSystems.get(bucketOf(uri));
+        if (fileSystem == null)
+            throw new FileSystemNotFoundException(uri.toString());
+        return fileSystem;
     }
 
     @Override
     public Path getPath(URI uri) {
-        S3FileSystem fs = fileSystems.computeIfAbsent(uri, this::fromURI);
+        S3FileSystem fs = fileSystems.computeIfAbsent(bucketOf(uri), this::fromBucket);
         return S3Path.createPath(fs, uri.getPath());
     }
 
-    private S3FileSystem fromURI(URI uri) {
-        return S3FileSystem.withDynamicCredentials(this);
+    private S3FileSystem fromBucket(String bucket) {
+        return S3FileSystem.withDynamicCredentials(bucket, this);
+    }
+
+    private static String bucketOf(URI uri) {
+        checkArgument(S3_SCHEME.equalsIgnoreCase(uri.getScheme()), "S3 nio FS expects '%s' scheme but got '%s'", S3_SCHEME, uri.getScheme());
+        checkArgument(!nullOrEmpty(uri.getHost()), "S3 nio FS expects a bucket in '%s'", uri);
+        return uri.getHost();
+    }
+
+    void fileSystemClosed(S3FileSystem fileSystem) {
+        fileSystems.remove(fileSystem.getBucket(), fileSystem);
+    }
+
+    S3Clients.Registry getClientRegistry() {
+        return clientRegistry;
+    }
+
+    BucketRegions getBucketRegions() {
+        return bucketRegions;
     }
 
     @Override
     public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND))
+            return S3WritableByteChannel.create(path, options, attrs);
         return S3SeekableByteChannel.create(path, options, attrs);
     }
 
+    /**
+     * Lists one level per call, except when a traversal is going down the tree: a directory found listing a directory
+     * that was itself returned by a listing. That subtree is then listed flat in one go and the streams opened further
+     * down are served from memory, so walking a deep tree costs one request per thousand keys instead of one per
+     * directory. A subtree with more keys than {@link S3FSSettings#getListingMaxFlatKeys()} is listed one level at a
+     * time after all, and so is everything under it.
+     */
     @Override
     public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
-        return null;
+        S3Path s3Dir = toS3Path(dir);
+        if (s3Dir.getListing() != null)
+            return new FlatListing.Stream(s3Dir, s3Dir.getListing(), filter);
+        boolean tooLarge = false;
+        if (s3Dir.getDescent() == FlatListing.Descent.DESCENDING && s3Dir.getAttributes().isDirectory()) {
+            DirectoryStream<Path> flat = FlatListing.list(s3Dir, filter);
+            if (flat != null)
+                return flat;
+            tooLarge = true;
+        }
+        return new S3DirectoryStream(s3Dir, filter, FlatListing.Descent.ofChildren(s3Dir, tooLarge));
     }
 
     @Override
@@ -79,24 +146,91 @@ public class S3FileSystemProvider extends FileSystemProvider {
 
     }
 
+    /**
+     * Deletes a single object. Prefixes with objects under them count as non-empty directories, see
+     * {@link S3FileSystem#deleteRecursively(Path)} to remove those. A directory holding nothing but the {@code dir/}
+     * marker object other tools create for empty directories is empty, and deleting it removes the marker.
+     */
     @Override
     public void delete(Path path) throws IOException {
+        S3Path s3Path = toS3Path(path);
+        S3FileSystem fileSystem = (S3FileSystem) s3Path.getFileSystem();
+        if (!fileSystem.objectExists(s3Path.getBucket(), s3Path.getKey())) {
+            String marker = s3Path.getKey() + UnixPath.SEPARATOR;
+            // the marker sorts first, anything past it means the directory isn't empty
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                                                               .bucket(s3Path.getBucket())
+                                                               .prefix(marker)
+                                                               .maxKeys(2)
+                                                               .build();
+            List<S3Object> contents = fileSystem.getS3Client().listObjectsV2(request).contents();
+            if (contents.isEmpty())
+                throw new NoSuchFileException(path.toString());
+            if (contents.size() > 1 || !contents.get(0).key().equals(marker))
+                throw new DirectoryNotEmptyException(path.toString());
+            deleteObject(fileSystem, s3Path.getBucket(), marker);
+            return;
+        }
+        deleteObject(s3Path);
+    }
 
+    private static void deleteObject(S3Path s3Path) {
+        deleteObject((S3FileSystem) s3Path.getFileSystem(), s3Path.getBucket(), s3Path.getKey());
     }
 
+    private static void deleteObject(S3FileSystem fileSystem, String bucket, String key) {
+        fileSystem.getS3Client().deleteObject(DeleteObjectRequest.builder()
+                                                                 .bucket(bucket)
+                                                                 .key(key)
+                                                                 .build());
+        fileSystem.getMetadataCache().invalidate(bucket, key);
+    }
+
+    /**
+     * Copies server side, the bytes never go through this JVM. Object metadata is always carried over.
+     */
     @Override
     public void copy(Path source, Path target, CopyOption... options) throws IOException {
-
+        S3Path s3Source = toS3Path(source);
+        S3Path s3Target = toS3Path(target);
+        if (s3Source.equals(s3Target))
+            return;
+        if (!Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING) && exists(s3Target))
+            throw new FileAlreadyExistsException(target.toString());
+
+        new ServerSideCopy((S3FileSystem) s3Source.getFileSystem(), (S3FileSystem) s3Target.getFileSystem())
+                .copy(s3Source.getBucket(), s3Source.getKey(), s3Target.getBucket(), s3Target.getKey());
     }
 
+    /**
+     * A {@link #copy} followed by a delete of the source, S3 has no rename. Moving an object onto itself does nothing,
+     * the delete would otherwise remove the only copy.
+     */
     @Override
     public void move(Path source, Path target, CopyOption... options) throws IOException {
+        if (Arrays.asList(options).contains(StandardCopyOption.ATOMIC_MOVE))
+            throw new AtomicMoveNotSupportedException(source.toString(), target.toString(), "S3 has no atomic rename");
+        if (toS3Path(source).equals(toS3Path(target)))
+            return;
 
+        copy(source, target, options);
+        deleteObject(toS3Path(source));
+    }
+
+    private static S3Path toS3Path(Path path) {
+        if (!(path instanceof S3Path))
+            throw new ProviderMismatchException("Expected an S3 path but got " + path);
+        return (S3Path) path;
+    }
+
+    private static boolean exists(S3Path path) {
+        return ((S3FileSystem) path.getFileSystem()).objectExists(path.getBucket(), path.getKey());
     }
 
     @Override
     public boolean isSameFile(Path path, Path path2) throws IOException {
-        return false;
+        // objects have no links or aliases, the same bucket and key is the same object
+        return path.equals(path2);
     }
 
     @Override
@@ -119,14 +253,22 @@ public class S3FileSystemProvider extends FileSystemProvider {
         return null;
     }
 
+    /**
+     * Paths returned by a directory stream answer from what the listing said while it's still in the metadata cache,
+     * others cost a HEAD, plus a LIST if there is no such object and the path could be a directory.
+     */
     @Override
     public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
-        return null;
+        if (type != BasicFileAttributes.class && type != S3FileAttributes.class)
+            throw new UnsupportedOperationException("Unsupported attributes " + type.getName());
+
+        S3Path s3Path = toS3Path(path);
+        return type.cast(((S3FileSystem) s3Path.getFileSystem()).readAttributes(s3Path));
     }
 
     @Override
     public AsynchronousFileChannel newAsynchronousFileChannel(Path path, Set<? extends OpenOption> options, ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
-        return super.newAsynchronousFileChannel(path, options, executor, attrs);
+        return S3AsynchronousFileChannel.create(path, options, executor == null ? completionExecutor : executor, attrs);
     }
 
     @Override
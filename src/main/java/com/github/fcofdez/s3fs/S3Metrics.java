@@ -0,0 +1,244 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a {@link S3FileSystem} did to S3: requests, failures, retries and latencies by operation, requests in flight,
+ * bytes moved, time channels spent refilling their buffer, streams reopened, hedged GETs, and how often the caches
+ * spared a request.
+ *
+ * Everything is recorded into {@link LongAdder}s and {@link LatencyHistogram}s, no lock is taken on the read path.
+ * Requests are recorded by an interceptor of the SDK clients, so they include retries the SDK makes on its own; the
+ * latency of a GET runs until its response arrives, not until its body is consumed.
+ */
+public final class S3Metrics implements S3MetricsMXBean {
+    private static final double P50 = 50;
+    private static final double P99 = 99;
+
+    public enum Operation {
+        GET, HEAD, LIST, PUT, COPY, DELETE, OTHER;
+
+        static Operation of(SdkRequest request) {
+            if (request instanceof GetObjectRequest)
+                return GET;
+            if (request instanceof HeadObjectRequest)
+                return HEAD;
+            if (request instanceof ListObjectsV2Request)
+                return LIST;
+            if (request instanceof PutObjectRequest || request instanceof UploadPartRequest)
+                return PUT;
+            if (request instanceof CopyObjectRequest || request instanceof UploadPartCopyRequest)
+                return COPY;
+            if (request instanceof DeleteObjectRequest || request instanceof DeleteObjectsRequest)
+                return DELETE;
+            // multipart upload bookkeeping, bucket location
+            return OTHER;
+        }
+    }
+
+    private final Map<Operation, LongAdder> requests = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder streamReopens = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LatencyHistogram rebufferLatency = new LatencyHistogram();
+    // null when disabled
+    private final BlockCache blockCache;
+    private final MetadataCache metadataCache;
+
+    S3Metrics(BlockCache blockCache, MetadataCache metadataCache) {
+        this.blockCache = blockCache;
+        this.metadataCache = metadataCache;
+        // filled once, only read afterwards
+        for (Operation operation : Operation.values()) {
+            requests.put(operation, new LongAdder());
+            failures.put(operation, new LongAdder());
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    void requestStarted() {
+        inFlight.increment();
+    }
+
+    void requestFinished(Operation operation, long nanos, boolean failed) {
+        inFlight.decrement();
+        requests.get(operation).increment();
+        if (failed)
+            failures.get(operation).increment();
+        latencies.get(operation).record(nanos);
+    }
+
+    void retried() {
+        retries.increment();
+    }
+
+    void streamReopened() {
+        streamReopens.increment();
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    void rebuffered(long nanos) {
+        rebufferLatency.record(nanos);
+    }
+
+    void hedged() {
+        hedges.increment();
+    }
+
+    void hedgeWon() {
+        hedgeWins.increment();
+    }
+
+    public long getRequestCount(Operation operation) {
+        return requests.get(operation).sum();
+    }
+
+    public long getFailedRequestCount(Operation operation) {
+        return failures.get(operation).sum();
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    /**
+     * Time {@link S3SeekableByteChannel} reads spent refilling the channel buffer, from the cache or from S3.
+     */
+    public LatencyHistogram getRebufferLatency() {
+        return rebufferLatency;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return sum(requests);
+    }
+
+    @Override
+    public long getFailedRequestCount() {
+        return sum(failures);
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getStreamReopenCount() {
+        return streamReopens.sum();
+    }
+
+    @Override
+    public long getInFlightRequests() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getHedgedRequestCount() {
+        return hedges.sum();
+    }
+
+    @Override
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRequestCountByOperation() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            counts.put(operation.name(), getRequestCount(operation));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getP50LatencyMillisByOperation() {
+        return percentiles(P50);
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMillisByOperation() {
+        return percentiles(P99);
+    }
+
+    @Override
+    public double getP50RebufferMillis() {
+        return rebufferLatency.getPercentileMillis(P50);
+    }
+
+    @Override
+    public double getP99RebufferMillis() {
+        return rebufferLatency.getPercentileMillis(P99);
+    }
+
+    @Override
+    public double getBlockCacheHitRatio() {
+        if (blockCache == null)
+            return Double.NaN;
+        return ratio(blockCache.getHitCount() + blockCache.getDiskHitCount(), blockCache.getMissCount());
+    }
+
+    @Override
+    public double getMetadataCacheHitRatio() {
+        return ratio(metadataCache.getHitCount(), metadataCache.getMissCount());
+    }
+
+    private Map<String, Double> percentiles(double percentile) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation.name(), latencies.get(operation).getPercentileMillis(percentile));
+        }
+        return result;
+    }
+
+    private static long sum(Map<Operation, LongAdder> counters) {
+        long total = 0;
+        for (LongAdder counter : counters.values()) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    private static double ratio(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? Double.NaN : (double) hits / lookups;
+    }
+}
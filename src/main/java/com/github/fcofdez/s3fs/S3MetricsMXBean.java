@@ -0,0 +1,56 @@
+package com.github.fcofdez.s3fs;
+
+import java.util.Map;
+
+/**
+ * What {@link S3Metrics} exposes over JMX, registered as
+ * {@code com.github.fcofdez.s3fs:type=S3FileSystem,bucket="<bucket>"} for every open filesystem.
+ */
+public interface S3MetricsMXBean {
+    long getRequestCount();
+
+    long getFailedRequestCount();
+
+    long getRetryCount();
+
+    /**
+     * Streaming GETs a channel reopened because the one it was reading from failed, apart from the SDK's retries.
+     */
+    long getStreamReopenCount();
+
+    long getInFlightRequests();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    /**
+     * Duplicate GETs sent because the first one was slow to respond, and how many of them finished first.
+     */
+    long getHedgedRequestCount();
+
+    long getHedgeWinCount();
+
+    /**
+     * Requests by operation, {@code GET}, {@code LIST} and so on.
+     */
+    Map<String, Long> getRequestCountByOperation();
+
+    Map<String, Double> getP50LatencyMillisByOperation();
+
+    Map<String, Double> getP99LatencyMillisByOperation();
+
+    double getP50RebufferMillis();
+
+    double getP99RebufferMillis();
+
+    /**
+     * Share of block lookups served from memory or disk, {@code NaN} before the first lookup or without a cache.
+     */
+    double getBlockCacheHitRatio();
+
+    /**
+     * Share of metadata lookups that didn't need a request, {@code NaN} before the first lookup.
+     */
+    double getMetadataCacheHitRatio();
+}
@@ -0,0 +1,82 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+
+/**
+ * What we know about an object version without reading it: size, ETag, last modification time and storage class.
+ */
+final class S3ObjectMetadata {
+    private final long size;
+    private final String eTag;
+    private final Instant lastModified;
+    private final String storageClass;
+
+    S3ObjectMetadata(long size, String eTag, Instant lastModified, String storageClass) {
+        this.size = size;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.storageClass = storageClass;
+    }
+
+    static S3ObjectMetadata of(HeadObjectResponse response) {
+        return new S3ObjectMetadata(response.contentLength(), response.eTag(), response.lastModified(),
+                                    response.storageClassAsString());
+    }
+
+    static S3ObjectMetadata of(S3Object object) {
+        return new S3ObjectMetadata(object.size(), object.eTag(), object.lastModified(), object.storageClassAsString());
+    }
+
+    /**
+     * Extracts the metadata of a ranged GET, the object size comes from the {@code Content-Range} header. Returns
+     * {@code null} if the response carries no usable size.
+     */
+    static S3ObjectMetadata of(GetObjectResponse response) {
+        long size = totalLength(response.contentRange());
+        if (size < 0)
+            return null;
+        return new S3ObjectMetadata(size, response.eTag(), response.lastModified(), response.storageClassAsString());
+    }
+
+    /**
+     * Parses the complete length out of a {@code Content-Range: bytes <first>-<last>/<length>} header, {@code -1} if
+     * it's absent or unknown ({@code *}).
+     */
+    static long totalLength(String contentRange) {
+        if (contentRange == null)
+            return -1;
+
+        int slash = contentRange.lastIndexOf('/');
+        if (slash == -1 || slash == contentRange.length() - 1 || contentRange.charAt(slash + 1) == '*')
+            return -1;
+
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    String eTag() {
+        return eTag;
+    }
+
+    Instant lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * The storage class, {@code null} when not reported. HEAD and GET leave it out for STANDARD objects.
+     */
+    String storageClass() {
+        return storageClass;
+    }
+}
@@ -3,22 +3,56 @@ package com.github.fcofdez.s3fs;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.*;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+/**
+ * A path of the bucket of its {@link S3FileSystem}. The object key is the absolute path without its leading
+ * separator, derived once when first needed. Equality, hashing and ordering only look at bucket and key, and order
+ * keys the way S3 lists them.
+ */
 class S3Path implements Path {
     private final S3FileSystem fileSystem;
 
     private final UnixPath unixPath;
 
+    // derived lazily, racing threads compute the same thing
+    private String key;
+
+    // what the listing this path came out of said about it, if it came out of one
+    private final S3Attributes attributes;
+    private final FlatListing.Directory listing;
+    private final FlatListing.Descent descent;
+
     private S3Path(S3FileSystem s3FileSystem, UnixPath unixPath) {
+        this(s3FileSystem, unixPath, null, null, FlatListing.Descent.NONE);
+    }
+
+    private S3Path(S3FileSystem s3FileSystem, UnixPath unixPath, S3Attributes attributes, FlatListing.Directory listing,
+                   FlatListing.Descent descent) {
         this.fileSystem = s3FileSystem;
         this.unixPath = unixPath;
+        this.attributes = attributes;
+        this.listing = listing;
+        this.descent = descent;
     }
 
     static S3Path createPath(S3FileSystem s3FileSystem, String path, String... rest)
     {
-        return new S3Path(s3FileSystem, UnixPath.createPath(path));
+        if (rest.length == 0)
+            return new S3Path(s3FileSystem, UnixPath.createPath(path));
+
+        StringBuilder joined = new StringBuilder(path);
+        for (String more : rest) {
+            if (more.isEmpty())
+                continue;
+            if (joined.length() > 0)
+                joined.append(UnixPath.SEPARATOR);
+            joined.append(more);
+        }
+        return new S3Path(s3FileSystem, UnixPath.createPath(joined.toString()));
     }
 
     @Override
@@ -28,7 +62,7 @@ class S3Path implements Path {
 
     @Override
     public boolean isAbsolute() {
-        return false;
+        return unixPath.isAbsolute();
     }
 
     @Override
@@ -48,17 +82,17 @@ class S3Path implements Path {
 
     @Override
     public int getNameCount() {
-        return 0;
+        return unixPath.getNameCount();
     }
 
     @Override
     public Path getName(int index) {
-        return null;
+        return newPath(unixPath.getName(index));
     }
 
     @Override
     public Path subpath(int beginIndex, int endIndex) {
-        return null;
+        return newPath(unixPath.subpath(beginIndex, endIndex));
     }
 
     @Override
@@ -80,7 +114,7 @@ class S3Path implements Path {
 
     @Override
     public boolean endsWith(String other) {
-        return false;
+        return unixPath.endsWith(UnixPath.createPath(other));
     }
 
     @Override
@@ -105,32 +139,51 @@ class S3Path implements Path {
 
     @Override
     public Path resolve(String other) {
-        return null;
+        return newPath(unixPath.resolve(UnixPath.createPath(other)));
+    }
+
+    /**
+     * Resolves a directory entry, remembering the attributes the listing had for it and, for a directory whose subtree
+     * was listed, that part of the tree.
+     */
+    S3Path resolve(String name, S3Attributes attributes, FlatListing.Directory listing) {
+        return resolve(name, attributes, listing, FlatListing.Descent.NONE);
+    }
+
+    /**
+     * Resolves an entry of a directory listed a level at a time, along with how far down a traversal it was found.
+     */
+    S3Path resolve(String name, S3Attributes attributes, FlatListing.Directory listing, FlatListing.Descent descent) {
+        return new S3Path(fileSystem, unixPath.resolve(UnixPath.createPath(name)), attributes, listing, descent);
     }
 
     @Override
     public Path resolveSibling(Path other) {
-        return null;
+        return newPath(unixPath.resolveSibling(getS3Path(other).unixPath));
     }
 
     @Override
     public Path resolveSibling(String other) {
-        return null;
+        return newPath(unixPath.resolveSibling(UnixPath.createPath(other)));
     }
 
     @Override
     public Path relativize(Path other) {
-        return null;
+        return newPath(unixPath.relativize(getS3Path(other).unixPath));
     }
 
     @Override
     public URI toUri() {
-        return null;
+        try {
+            return new URI("s3", getBucket(), UnixPath.SEPARATOR + getKey(), null, null);
+        } catch (URISyntaxException e) {
+            throw new AssertionError(e);
+        }
     }
 
     @Override
     public Path toAbsolutePath() {
-        return null;
+        return newPath(unixPath.toAbsolutePath());
     }
 
     @Override
@@ -139,7 +192,7 @@ class S3Path implements Path {
     }
 
     private Path newPath(UnixPath unixPath) {
-        return new S3Path(fileSystem, unixPath);
+        return unixPath == null ? null : new S3Path(fileSystem, unixPath);
     }
 
     @Override
@@ -159,19 +212,102 @@ class S3Path implements Path {
 
     @Override
     public Iterator<Path> iterator() {
-        return null;
+        return new Iterator<Path>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < getNameCount();
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return getName(index++);
+            }
+        };
     }
 
     @Override
     public int compareTo(Path other) {
-        return 0;
+        S3Path s3Path = getS3Path(other);
+        int result = getBucket().compareTo(s3Path.getBucket());
+        return result != 0 ? result : compareKeys(getKey(), s3Path.getKey());
+    }
+
+    /**
+     * Compares keys by their UTF-8 bytes, the order S3 lists them in, without encoding them. UTF-16 order only differs
+     * from it for characters above U+FFFF, whose surrogates must sort after U+E000 to U+FFFF instead of before.
+     */
+    static int compareKeys(String key, String other) {
+        int length = Math.min(key.length(), other.length());
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            char o = other.charAt(i);
+            if (c == o)
+                continue;
+
+            if (c >= Character.MIN_SURROGATE && o >= Character.MIN_SURROGATE) {
+                c = Character.isSurrogate(c) ? (char) (c + 0x2000) : (char) (c - 0x800);
+                o = Character.isSurrogate(o) ? (char) (o + 0x2000) : (char) (o - 0x800);
+            }
+            return c - o;
+        }
+        return key.length() - other.length();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof S3Path)) return false;
+        S3Path other = (S3Path) o;
+        return getKey().equals(other.getKey()) && getBucket().equals(other.getBucket());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * getBucket().hashCode() + getKey().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return unixPath.toString();
     }
 
     String getBucket() {
-        return "datastax-backup-test";
+        return fileSystem.getBucket();
     }
 
+    /**
+     * The object key, relative paths are taken from the root. Empty for the root itself.
+     */
     String getKey() {
-        return "2PCommit.tla";
+        String result = key;
+        if (result == null) {
+            String path = unixPath.toString();
+            int start = 0;
+            while (start < path.length() && path.charAt(start) == UnixPath.SEPARATOR) {
+                start++;
+            }
+            result = path.substring(start);
+            key = result;
+        }
+        return result;
+    }
+
+    /**
+     * Attributes from the listing this path was returned by, {@code null} if it wasn't.
+     */
+    S3Attributes getAttributes() {
+        return attributes;
+    }
+
+    FlatListing.Directory getListing() {
+        return listing;
+    }
+
+    FlatListing.Descent getDescent() {
+        return descent;
     }
 }
@@ -5,38 +5,82 @@ import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
-import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileAttribute;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
 
 public class S3SeekableByteChannel implements SeekableByteChannel {
 
-    public static final int BUFFER_SIZE = 1 << 12;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    private static final int TRANSFER_SIZE = 16 * 1024;
+    private static final long UNKNOWN_SIZE = -1;
 
-    private byte[] buffer = new byte[BUFFER_SIZE];
-    private int bufferPointer = 0;
-    private int bufferLimit = 0;
+    private ByteBuffer buffer = EMPTY_BUFFER;
+    // pooled buffers owned by this channel until drained, buffer points to one of them unless it comes from the cache
+    private ByteBuffer fillBuffer;
+    private ByteBuffer prefetchedBlock;
+    // staging for stream reads into direct buffers
+    private byte[] transfer;
+    // object offset of buffer index 0
+    private long bufferStart = 0;
     private long position = 0;
-    private final long size;
+    // learnt from the metadata cache or the first GET, only a size() call without either issues a HEAD
+    private long size = UNKNOWN_SIZE;
+    // the version read, every GET is pinned to it with If-Match once known
+    private String eTag;
+    // whether a response vouched for size and eTag, until then they may come from a stale metadata cache entry
+    private boolean confirmed;
+    // whether any byte went out to the caller, after that the channel can't move on to another version
+    private boolean delivered;
+    private final S3FileSystem fileSystem;
     private final S3Client s3Client;
     private final String bucket;
     private final String key;
+    private final BlockCache cache;
+    private final BufferPool bufferPool;
+    private final S3Metrics metrics;
+    private final Readahead readahead;
+    private final int maxStreamSkip;
+    private final int prefetchParallelism;
+    private BlockPrefetcher prefetcher;
+    private RangeFetcher rangeFetcher;
+    private ResponseInputStream<GetObjectResponse> stream;
+    private long streamPosition;
     private boolean closed = false;
 
-    private S3SeekableByteChannel(S3Client s3Client, String bucket, String key) {
+    private S3SeekableByteChannel(S3FileSystem s3FileSystem, String bucket, String key) {
+        S3FSSettings settings = s3FileSystem.getSettings();
         this.bucket = bucket;
         this.key = key;
-        this.s3Client = s3Client;
-        HeadObjectRequest build = HeadObjectRequest.builder().bucket(bucket).key(key).build();
-        HeadObjectResponse headObjectResponse = s3Client.headObject(build);
+        this.fileSystem = s3FileSystem;
+        this.s3Client = s3FileSystem.getS3Client();
+        this.readahead = new Readahead(settings.getMinReadahead(), settings.getMaxReadahead());
+        this.maxStreamSkip = settings.getMaxStreamSkip();
+        this.prefetchParallelism = settings.getPrefetchParallelism();
+        this.cache = s3FileSystem.getBlockCache();
+        this.bufferPool = s3FileSystem.getBufferPool();
+        this.metrics = s3FileSystem.getMetrics();
 
-        this.size = headObjectResponse.contentLength();
+        S3ObjectMetadata metadata = s3FileSystem.getMetadataCache().get(bucket, key);
+        if (metadata != null)
+            setMetadata(metadata);
     }
 
     static SeekableByteChannel create(Path path, Set<? extends OpenOption> options, FileAttribute<?>[] attrs) {
@@ -44,63 +88,538 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
         {
             S3Path s3Path = (S3Path) path;
             S3FileSystem s3FileSystem = (S3FileSystem) s3Path.getFileSystem();
-            return new S3SeekableByteChannel(s3FileSystem.getS3Client(), s3Path.getBucket(), s3Path.getKey());
+            return new S3SeekableByteChannel(s3FileSystem, s3Path.getBucket(), s3Path.getKey());
         }
         return null;
     }
 
     @Override
     public int read(ByteBuffer dst) throws IOException {
-        if (position == size)
+        if (size != UNKNOWN_SIZE && position >= size) {
+            if (!confirmed)
+                confirmMetadata();
+            if (position >= size)
+                return -1;
+        }
+
+        if (!dst.hasRemaining())
+            return 0;
+
+        if (!seekInBuffer(position)) {
+            long start = System.nanoTime();
+            int directlyRead = rebufferPinned(dst);
+            metrics.rebuffered(System.nanoTime() - start);
+            if (directlyRead != 0)
+                return directlyRead;
+        }
+
+        int len = Math.min(remaining(), dst.remaining());
+        ByteBuffer src = buffer.duplicate();
+        src.limit(src.position() + len);
+        dst.put(src);
+        buffer.position(src.position());
+        position += len;
+        delivered = true;
+        // an idle channel holds no pooled memory, or enough open ones would starve the pool
+        if (!buffer.hasRemaining())
+            releaseBuffers();
+
+        return len;
+    }
+
+    /**
+     * {@link #rebuffer(ByteBuffer)}, starting over once if the version the channel is pinned to turns out to have been
+     * replaced.
+     */
+    private int rebufferPinned(ByteBuffer dst) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return rebuffer(dst);
+            } catch (IOException | S3Exception e) {
+                int status = statusOf(e);
+                if (status == 404)
+                    throw noSuchFile(e);
+                if (status != 412 || attempt > 0)
+                    throw e;
+                versionChanged();
+            }
+        }
+    }
+
+    /**
+     * A GET pinned to {@link #eTag} found another version: the metadata cache was stale when the channel opened, or
+     * the object was overwritten since. Whatever is cached about the old version goes. A channel that hasn't handed
+     * out any bytes yet starts over on the new version; any other would mix bytes of both, so it fails instead.
+     */
+    private void versionChanged() throws IOException {
+        fileSystem.getMetadataCache().invalidate(bucket, key);
+        if (cache != null)
+            cache.invalidate(bucket, key, eTag);
+        if (delivered)
+            throw new IOException("s3://" + bucket + "/" + key + " was replaced while being read");
+
+        abortStream();
+        releasePrefetchedBlock();
+        if (prefetcher != null)
+            prefetcher.cancel();
+        prefetcher = null;
+        buffer = EMPTY_BUFFER;
+        bufferStart = 0;
+        size = UNKNOWN_SIZE;
+        eTag = null;
+        confirmed = false;
+        if (rangeFetcher != null)
+            rangeFetcher.pin(null);
+    }
+
+    /**
+     * Checks the size and version taken from the metadata cache with a HEAD, rather than report the end of the object
+     * on their word alone.
+     */
+    private void confirmMetadata() throws IOException {
+        S3ObjectMetadata current = head();
+        if (!current.eTag().equals(eTag))
+            versionChanged();
+        setMetadata(current);
+        confirmed = true;
+    }
+
+    private S3ObjectMetadata head() throws IOException {
+        HeadObjectRequest request = HeadObjectRequest.builder().bucket(bucket).key(key).build();
+        S3ObjectMetadata metadata;
+        try {
+            metadata = S3ObjectMetadata.of(s3Client.headObject(request));
+        } catch (NoSuchKeyException e) {
+            throw noSuchFile(e);
+        }
+        fileSystem.getMetadataCache().put(bucket, key, metadata);
+        return metadata;
+    }
+
+    private NoSuchFileException noSuchFile(Exception cause) {
+        NoSuchFileException e = new NoSuchFileException("s3://" + bucket + "/" + key);
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * Reads all {@code ranges} asynchronously, independently of the channel position. Nearby ranges are merged into
+     * fewer GETs (see {@link S3FSSettings.Builder#setVectoredMaxGap(int)}) that run concurrently, and each range's
+     * {@link FileRange#getData()} completes with a buffer from {@code allocate} as soon as its bytes arrive.
+     *
+     * @throws IllegalArgumentException if two ranges overlap
+     */
+    public void readVectored(List<? extends FileRange> ranges, IntFunction<ByteBuffer> allocate) throws IOException {
+        if (closed)
+            throw new ClosedChannelException();
+
+        S3FSSettings settings = fileSystem.getSettings();
+        long size = size();
+        // the ranges are read from the version the channel is pinned to
+        delivered = true;
+        new VectoredRead(rangeFetcher(), settings.getVectoredMaxGap(), settings.getVectoredMaxMergedSize())
+                .read(ranges, size, allocate);
+    }
+
+    private RangeFetcher rangeFetcher() {
+        if (rangeFetcher == null) {
+            rangeFetcher = new RangeFetcher(fileSystem, bucket, key);
+            rangeFetcher.pin(eTag);
+        }
+        return rangeFetcher;
+    }
+
+    /**
+     * The prefetcher needs the object size, so it only comes up once some request has told us what it is.
+     */
+    private BlockPrefetcher prefetcher() {
+        if (prefetcher == null && prefetchParallelism > 0 && size != UNKNOWN_SIZE) {
+            S3FSSettings settings = fileSystem.getSettings();
+            prefetcher = new BlockPrefetcher(rangeFetcher(), size, settings.getPrefetchBlockSize(),
+                                             prefetchParallelism, alignment());
+        }
+        return prefetcher;
+    }
+
+    /**
+     * Refills the buffer at {@code position}. When {@code dst} can take at least a whole readahead window the bytes
+     * are read straight into it instead, skipping the buffer, and the number of bytes read is returned. Returns -1 if
+     * {@code position} turns out to be past the end of the object.
+     */
+    private int rebuffer(ByteBuffer dst) throws IOException {
+        boolean sequential = readahead.isSequential(position);
+        int window = readahead.nextWindow(position);
+
+        // blocks are keyed by version, until the first GET we don't know which one we're reading
+        if (cache != null && eTag != null && rebufferFromCache())
+            return 0;
+
+        BlockPrefetcher prefetcher = prefetcher();
+        if (prefetcher != null && (sequential || prefetcher.contains(position))) {
+            abortStream();
+            releasePrefetchedBlock();
+            ByteBuffer block = prefetcher.blockAt(position);
+            // pinned by If-Match, the block is of the version the channel expects
+            confirmed = true;
+            prefetchedBlock = block;
+            buffer = block;
+            bufferStart = position - buffer.position();
+            readahead.onFetch(position, buffer.remaining());
+            populateCacheFromBuffer();
+            return 0;
+        }
+
+        if (prefetcher != null)
+            prefetcher.cancel();
+
+        long wanted = Math.min(dst.remaining(), objectEnd() - position);
+        if (wanted >= window)
+            return readDirect(dst, (int) wanted, sequential);
+
+        long start = position - position % alignment();
+        long end = Math.min(objectEnd(), roundUp(position + window));
+        releasePrefetchedBlock();
+        ByteBuffer target = fillBuffer((int) (end - start));
+
+        int bytesRead = fill(start, target, sequential);
+        if (bytesRead <= position - start)
+            return endOfObject();
+
+        readahead.onFetch(start, bytesRead);
+        target.flip();
+        buffer = target;
+        bufferStart = start;
+        buffer.position((int) (position - start));
+        populateCacheFromBuffer();
+        return 0;
+    }
+
+    private int readDirect(ByteBuffer dst, int length, boolean sequential) throws IOException {
+        ByteBuffer target = dst.duplicate();
+        target.limit(target.position() + length);
+
+        int bytesRead = fill(position, target, sequential);
+        if (bytesRead == 0)
+            return endOfObject();
+
+        ByteBuffer filled = dst.duplicate();
+        filled.limit(filled.position() + bytesRead);
+        populateCache(filled, position);
+
+        readahead.onFetch(position, bytesRead);
+        dst.position(dst.position() + bytesRead);
+        position += bytesRead;
+        delivered = true;
+        return bytesRead;
+    }
+
+    /**
+     * Reads at {@code start} into {@code target}, returning 0 if {@code start} is past the end of the object.
+     */
+    private int fill(long start, ByteBuffer target, boolean sequential) throws IOException {
+        try {
+            if (sequential || canSkipTo(start))
+                return fillFromStream(start, target);
+
+            abortStream();
+            return fillFromRange(start, target);
+        } catch (S3Exception e) {
+            if (!isRangeNotSatisfiable(e))
+                throw e;
+            return 0;
+        }
+    }
+
+    static boolean isRangeNotSatisfiable(Throwable error) {
+        return statusOf(error) == 416;
+    }
+
+    /**
+     * The HTTP status of the {@link S3Exception} behind {@code error}, -1 if there is none.
+     */
+    static int statusOf(Throwable error) {
+        while (error != null && !(error instanceof S3Exception))
+            error = error.getCause();
+        return error == null ? -1 : ((S3Exception) error).statusCode();
+    }
+
+    /**
+     * A read came back empty. That's the end of the object if the size, fetching it now if no request has told us
+     * yet, says so; otherwise the object got shorter while we were reading it.
+     */
+    private int endOfObject() throws IOException {
+        if (position >= size())
             return -1;
+        throw new EOFException("Unexpected end of s3://" + bucket + "/" + key + " at position " + position);
+    }
+
+    private long objectEnd() {
+        return size == UNKNOWN_SIZE ? Long.MAX_VALUE : size;
+    }
+
+    /**
+     * Records what a GET said about the object, which is how the channel finds out its size and version without a
+     * HEAD of its own.
+     */
+    private void learnMetadata(GetObjectResponse response) {
+        S3ObjectMetadata metadata = S3ObjectMetadata.of(response);
+        if (metadata == null)
+            return;
+
+        setMetadata(metadata);
+        confirmed = true;
+        fileSystem.getMetadataCache().put(bucket, key, metadata);
+    }
+
+    private void setMetadata(S3ObjectMetadata metadata) {
+        size = metadata.size();
+        eTag = metadata.eTag();
+        if (rangeFetcher != null)
+            rangeFetcher.pin(eTag);
+    }
 
-        if (remaining() == 0) {
-            rebuffer();
+    private ByteBuffer fillBuffer(int length) throws IOException {
+        if (fillBuffer == null || fillBuffer.capacity() < length) {
+            // give the old one back before waiting on the pool, buffer may still point at it
+            if (fillBuffer != null)
+                bufferPool.release(fillBuffer);
+            fillBuffer = null;
+            buffer = EMPTY_BUFFER;
+            // filled from an InputStream, or by copying out of an async fetch
+            fillBuffer = bufferPool.acquire(Math.max(length, readahead.window()), false);
         }
+        fillBuffer.clear().limit(length);
+        return fillBuffer;
+    }
+
+    /**
+     * Hands the pooled buffers back. Whatever they held is gone, the next read fetches it again.
+     */
+    private void releaseBuffers() {
+        releasePrefetchedBlock();
+        if (fillBuffer != null)
+            bufferPool.release(fillBuffer);
+        fillBuffer = null;
+        buffer = EMPTY_BUFFER;
+    }
+
+    private void releasePrefetchedBlock() {
+        if (prefetchedBlock == null)
+            return;
+
+        if (buffer == prefetchedBlock)
+            buffer = EMPTY_BUFFER;
+        prefetcher.release(prefetchedBlock);
+        prefetchedBlock = null;
+    }
 
-        int initialPosition = dst.position();
+    /**
+     * Points the buffer at {@code newPosition} if it holds that byte, so seeks within already fetched data are free.
+     */
+    private boolean seekInBuffer(long newPosition) {
+        long offset = newPosition - bufferStart;
+        if (offset < 0 || offset >= buffer.limit())
+            return false;
 
-        while (remaining() > 0 && dst.remaining() > 0) {
-            int len = Math.min(remaining(), dst.remaining());
-            dst.put(buffer, bufferPointer, len);
-            bufferPointer += (dst.position() - initialPosition);
-            position += (dst.position() - initialPosition);
+        buffer.position((int) offset);
+        return true;
+    }
+
+    private boolean rebufferFromCache() {
+        long index = position / cache.blockSize();
+        ByteBuffer block = cache.get(new BlockCache.BlockKey(bucket, key, eTag, index));
+        if (block == null)
+            return false;
+
+        long blockStart = index * cache.blockSize();
+        if (position - blockStart >= block.limit())
+            return false;
+
+        releasePrefetchedBlock();
+        buffer = block;
+        bufferStart = blockStart;
+        buffer.position((int) (position - blockStart));
+        readahead.onFetch(blockStart, block.limit());
+        return true;
+    }
+
+    private void populateCacheFromBuffer() {
+        ByteBuffer whole = buffer.duplicate();
+        whole.position(0);
+        populateCache(whole, bufferStart);
+    }
+
+    /**
+     * Offers every cache block fully covered by {@code data} to the filesystem cache. The byte at
+     * {@code data.position()} is the one at {@code offset} in the object.
+     *
+     * The blocks are keyed by {@link #eTag}, which the response that brought {@code data} either set or, pinned by
+     * If-Match, had to match.
+     */
+    private void populateCache(ByteBuffer data, long offset) {
+        if (cache == null || eTag == null || size == UNKNOWN_SIZE)
+            return;
+
+        int blockSize = cache.blockSize();
+        long dataStart = offset - data.position();
+        long dataEnd = offset + data.remaining();
+        for (long index = (offset + blockSize - 1) / blockSize; ; index++) {
+            long blockStart = index * blockSize;
+            long blockEnd = Math.min(blockStart + blockSize, size);
+            if (blockStart >= size || blockEnd > dataEnd)
+                break;
+
+            ByteBuffer block = data.duplicate();
+            block.limit((int) (blockEnd - dataStart));
+            block.position((int) (blockStart - dataStart));
+            cache.put(new BlockCache.BlockKey(bucket, key, eTag, index), block);
         }
+    }
 
-        return dst.position() - initialPosition;
+    private int alignment() {
+        return cache == null ? 1 : cache.blockSize();
     }
 
-    private void rebuffer() throws IOException {
-        GetObjectRequest rangeReq = GetObjectRequest.builder()
-                                                    .bucket(bucket)
-                                                    .key(key)
-                                                    .range(buildRangeRequest())
-                                                    .build();
+    private long roundUp(long offset) {
+        int alignment = alignment();
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * Reads from a single open-ended GET kept alive across calls. Short forward seeks are served by skipping on the
+     * live stream; anything else reopens it at {@code start}.
+     */
+    private int fillFromStream(long start, ByteBuffer target) throws IOException {
+        if (!canSkipTo(start))
+            abortStream();
 
-        ResponseInputStream<GetObjectResponse> in = s3Client.getObject(rangeReq);
+        int initialPosition = target.position();
+        try {
+            readFromStream(start, target);
+        } catch (IOException e) {
+            // the connection may have been dropped while idle, give it one more chance from a fresh GET
+            metrics.streamReopened();
+            abortStream();
+            readFromStream(start + target.position() - initialPosition, target);
+        }
+        return target.position() - initialPosition;
+    }
+
+    private void readFromStream(long start, ByteBuffer target) throws IOException {
+        if (stream == null) {
+            stream = s3Client.getObject(getObjectRequest(String.format("bytes=%d-", start)));
+            streamPosition = start;
+            learnMetadata(stream.response());
+        }
+
+        while (streamPosition < start) {
+            long skipped = stream.skip(start - streamPosition);
+            if (skipped <= 0)
+                throw new EOFException("Unexpected end of s3://" + bucket + "/" + key + " at position " + streamPosition);
+            // skipped bytes were transferred all the same
+            metrics.addBytesRead(skipped);
+            streamPosition += skipped;
+        }
+
+        streamPosition += readFully(stream, target);
+    }
+
+    private boolean canSkipTo(long newPosition) {
+        return stream != null && newPosition >= streamPosition && newPosition - streamPosition <= maxStreamSkip;
+    }
+
+    private int fillFromRange(long start, ByteBuffer target) throws IOException {
+        // the async GET reports what it learns only to the metadata cache, the first one tells the channel directly
+        if (size != UNKNOWN_SIZE && rangeFetcher().isHedged())
+            return fillFromHedgedRange(start, target);
+
+        // upper range inclusive
+        String range = String.format("bytes=%d-%d", start, start + target.remaining() - 1);
+        try (ResponseInputStream<GetObjectResponse> in = s3Client.getObject(getObjectRequest(range))) {
+            learnMetadata(in.response());
+            return readFully(in, target);
+        }
+    }
+
+    /**
+     * Same as {@link #fillFromRange(long, ByteBuffer)} through the async client, so a slow GET can be hedged. Each
+     * attempt lands in a pooled buffer of its own and the winner is copied into {@code target}.
+     */
+    private int fillFromHedgedRange(long start, ByteBuffer target) throws IOException {
+        CompletableFuture<ByteBuffer> future = rangeFetcher().fetch(start, target.remaining());
+        ByteBuffer fetched;
+        try {
+            fetched = RangeFetcher.await(future);
+        } catch (IOException e) {
+            // gives the buffer back if interrupted while the request is still running
+            future.cancel(true);
+            if (isRangeNotSatisfiable(e))
+                return 0;
+            throw e;
+        }
+
+        confirmed = true;
+        try {
+            int bytesRead = fetched.remaining();
+            target.put(fetched);
+            return bytesRead;
+        } finally {
+            rangeFetcher().release(fetched);
+        }
+    }
+
+    /**
+     * Reads until {@code target} is full or the stream ends. Heap buffers are filled in place, direct ones through a
+     * small transfer array since {@link InputStream} only speaks {@code byte[]}.
+     */
+    private int readFully(InputStream in, ByteBuffer target) throws IOException {
         int bytesRead = 0;
-        int n;
-        while ((n = in.read(buffer)) > -1) {
+        while (target.hasRemaining()) {
+            int n;
+            if (target.hasArray()) {
+                n = in.read(target.array(), target.arrayOffset() + target.position(), target.remaining());
+                if (n > 0)
+                    target.position(target.position() + n);
+            } else {
+                if (transfer == null)
+                    transfer = new byte[TRANSFER_SIZE];
+                n = in.read(transfer, 0, Math.min(transfer.length, target.remaining()));
+                if (n > 0)
+                    target.put(transfer, 0, n);
+            }
+            if (n < 0)
+                break;
             bytesRead += n;
         }
-        bufferPointer = 0;
-        bufferLimit = bytesRead;
+        metrics.addBytesRead(bytesRead);
+        return bytesRead;
     }
 
-    private String buildRangeRequest() {
-        // upper range inclusive
-        long upperBound = Math.min(size, position + BUFFER_SIZE - 1);
-        return String.format("bytes=%d-%d", position, upperBound);
+    private GetObjectRequest getObjectRequest(String range) {
+        return GetObjectRequest.builder()
+                               .bucket(bucket)
+                               .key(key)
+                               .range(range)
+                               .ifMatch(eTag)
+                               .build();
+    }
+
+    private void abortStream() {
+        if (stream == null)
+            return;
+
+        // closing would drain the rest of the object to recycle the connection
+        stream.abort();
+        stream = null;
     }
 
     private int remaining() {
-        return bufferLimit - bufferPointer;
+        return buffer.remaining();
     }
 
     @Override
     public int write(ByteBuffer src) throws IOException {
-        src.remaining();
-        return 0;
+        throw new NonWritableChannelException();
     }
 
     @Override
@@ -110,14 +629,18 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
 
     @Override
     public SeekableByteChannel position(long newPosition) throws IOException {
-        // check position is within current range;
+        checkArgument(newPosition >= 0, "Position must be >= 0 but got %d", newPosition);
+        // buffered data is kept, the next read decides whether it can be served from memory
         this.position = newPosition;
-        // invalidate buffer
         return this;
     }
 
     @Override
     public long size() throws IOException {
+        if (size == UNKNOWN_SIZE) {
+            setMetadata(head());
+            confirmed = true;
+        }
         return size;
     }
 
@@ -133,6 +656,13 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
 
     @Override
     public void close() throws IOException {
+        if (closed)
+            return;
+
         closed = true;
+        abortStream();
+        if (prefetcher != null)
+            prefetcher.cancel();
+        releaseBuffers();
     }
 }
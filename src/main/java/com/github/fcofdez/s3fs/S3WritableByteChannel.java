@@ -0,0 +1,281 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+import static com.github.fcofdez.s3fs.Util.checkArgument;
+
+/**
+ * Write-only channel that streams an object to S3.
+ *
+ * Bytes are staged in pooled part-sized buffers. Every full part is uploaded in the background as part of a multipart
+ * upload while the caller keeps writing into the next one; at most {@link S3FSSettings#getUploadParallelism()} parts are
+ * in flight and further writes block until one of them finishes. {@link #close()} uploads the last part and completes
+ * the upload, or sends the whole object with a single PUT if it never outgrew one part. Nothing is visible in the bucket
+ * until then.
+ */
+final class S3WritableByteChannel implements SeekableByteChannel {
+    private final S3FileSystem fileSystem;
+    private final S3AsyncClient s3Async;
+    private final String bucket;
+    private final String key;
+    private final BufferPool bufferPool;
+    private final int partSize;
+    private final Semaphore uploadPermits;
+    private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+    private ByteBuffer part;
+    private String uploadId;
+    private long written;
+    private volatile Throwable failure;
+    private boolean closed;
+
+    private S3WritableByteChannel(S3FileSystem fileSystem, String bucket, String key) {
+        S3FSSettings settings = fileSystem.getSettings();
+        this.fileSystem = fileSystem;
+        this.s3Async = fileSystem.getS3AsyncClient();
+        this.bucket = bucket;
+        this.key = key;
+        this.bufferPool = fileSystem.getBufferPool();
+        this.partSize = settings.getMultipartPartSize();
+        this.uploadPermits = new Semaphore(settings.getUploadParallelism());
+    }
+
+    static SeekableByteChannel create(Path path, Set<? extends OpenOption> options, FileAttribute<?>[] attrs) throws IOException {
+        checkArgument(path instanceof S3Path, "Expected an S3 path but got %s", path);
+        if (options.contains(StandardOpenOption.READ))
+            throw new UnsupportedOperationException("S3 objects can't be opened for reading and writing at once");
+        if (options.contains(StandardOpenOption.APPEND))
+            throw new UnsupportedOperationException("S3 objects can't be appended to");
+
+        S3Path s3Path = (S3Path) path;
+        S3FileSystem s3FileSystem = (S3FileSystem) s3Path.getFileSystem();
+        if (options.contains(StandardOpenOption.CREATE_NEW) && s3FileSystem.objectExists(s3Path.getBucket(), s3Path.getKey()))
+            throw new FileAlreadyExistsException(path.toString());
+
+        return new S3WritableByteChannel(s3FileSystem, s3Path.getBucket(), s3Path.getKey());
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        checkFailure();
+
+        int bytesWritten = 0;
+        while (src.hasRemaining()) {
+            if (part == null)
+                part = bufferPool.acquire(partSize);
+
+            int len = Math.min(src.remaining(), part.remaining());
+            ByteBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position() + len);
+            part.put(chunk);
+            src.position(chunk.position());
+            bytesWritten += len;
+
+            if (!part.hasRemaining())
+                uploadPart();
+        }
+        written += bytesWritten;
+        return bytesWritten;
+    }
+
+    /**
+     * Hands the current part to the async client, first waiting for a slot if the channel already has as many uploads
+     * in flight as it's allowed to.
+     */
+    private void uploadPart() throws IOException {
+        if (uploadId == null)
+            uploadId = createMultipartUpload();
+
+        try {
+            uploadPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        ByteBuffer body = part;
+        part = null;
+        body.flip();
+
+        int partNumber = parts.size() + 1;
+        long length = body.remaining();
+        UploadPartRequest request = UploadPartRequest.builder()
+                                                     .bucket(bucket)
+                                                     .key(key)
+                                                     .uploadId(uploadId)
+                                                     .partNumber(partNumber)
+                                                     .contentLength(length)
+                                                     .build();
+        CompletableFuture<CompletedPart> upload = s3Async.uploadPart(request, new ByteBufferRequestBody(body))
+                .handle((response, error) -> {
+                    bufferPool.release(body);
+                    uploadPermits.release();
+                    if (error != null) {
+                        failure = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        throw new CompletionException(failure);
+                    }
+                    fileSystem.getMetrics().addBytesWritten(length);
+                    return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+                });
+        parts.add(upload);
+    }
+
+    private String createMultipartUpload() throws IOException {
+        CreateMultipartUploadRequest request = CreateMultipartUploadRequest.builder().bucket(bucket).key(key).build();
+        return RangeFetcher.await(s3Async.createMultipartUpload(request)).uploadId();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable error = failure;
+        if (error != null)
+            throw new IOException("Upload of s3://" + bucket + "/" + key + " failed", error);
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed)
+            throw new ClosedChannelException();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        throw new NonReadableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return written;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition != written)
+            throw new UnsupportedOperationException("S3 objects are written sequentially");
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return written;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Makes the object visible: waits for the pending parts and completes the multipart upload, or PUTs the object
+     * if it's smaller than a part. On failure the multipart upload is aborted so its parts aren't billed forever, and
+     * should the abort fail too its error is attached, suppressed, to the one thrown.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            if (uploadId == null) {
+                putObject();
+            } else {
+                if (part != null && part.position() > 0)
+                    uploadPart();
+                completeMultipartUpload();
+            }
+        } catch (IOException | RuntimeException e) {
+            abortMultipartUpload(e);
+            throw e;
+        } finally {
+            if (part != null)
+                bufferPool.release(part);
+            part = null;
+            fileSystem.getMetadataCache().invalidate(bucket, key);
+        }
+    }
+
+    private void putObject() throws IOException {
+        ByteBuffer body = part == null ? ByteBuffer.allocate(0) : (ByteBuffer) part.flip();
+        long length = body.remaining();
+        PutObjectRequest request = PutObjectRequest.builder()
+                                                   .bucket(bucket)
+                                                   .key(key)
+                                                   .contentLength(length)
+                                                   .build();
+        RangeFetcher.await(s3Async.putObject(request, new ByteBufferRequestBody(body)));
+        fileSystem.getMetrics().addBytesWritten(length);
+    }
+
+    private void completeMultipartUpload() throws IOException {
+        List<CompletedPart> completed = new ArrayList<>(parts.size());
+        for (CompletableFuture<CompletedPart> upload : parts) {
+            completed.add(RangeFetcher.await(upload));
+        }
+        checkFailure();
+
+        CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                .build();
+        RangeFetcher.await(s3Async.completeMultipartUpload(request));
+    }
+
+    /**
+     * Aborts the upload {@code cause} made fail, waiting for S3 to confirm. An upload left behind keeps its parts
+     * billed until a lifecycle rule removes them, so a failed abort is reported along with {@code cause}.
+     */
+    private void abortMultipartUpload(Exception cause) {
+        if (uploadId == null)
+            return;
+
+        // let in flight parts drain first, S3 may otherwise keep parts that land after the abort
+        for (CompletableFuture<CompletedPart> upload : parts) {
+            upload.handle((completed, error) -> null).join();
+        }
+        AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                                                                         .bucket(bucket)
+                                                                         .key(key)
+                                                                         .uploadId(uploadId)
+                                                                         .build();
+        try {
+            RangeFetcher.await(s3Async.abortMultipartUpload(request));
+        } catch (IOException | RuntimeException e) {
+            cause.addSuppressed(new IOException("Abort of multipart upload " + uploadId + " of s3://" + bucket + "/" +
+                                                key + " failed", e));
+        }
+    }
+}
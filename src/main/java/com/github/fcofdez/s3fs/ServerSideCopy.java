@@ -0,0 +1,191 @@
+package com.github.fcofdez.s3fs;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies an object without its bytes ever leaving S3. Objects up to {@link S3FSSettings#getCopyPartSize()} take a
+ * single CopyObject, larger ones a multipart upload whose parts are UploadPartCopy requests issued concurrently.
+ *
+ * Every request is conditional on the ETag the source had when the copy started, so an object overwritten half way
+ * through fails the copy instead of producing a mix of both versions.
+ *
+ * The source is looked up through its own filesystem's client, everything else goes through the target's: S3 expects
+ * copies at the endpoint of the bucket they write to, which may be in another region.
+ */
+final class ServerSideCopy {
+    // S3 limit on the number of parts of an upload
+    private static final int MAX_PARTS = 10_000;
+
+    private final S3FileSystem sourceFileSystem;
+    private final S3FileSystem targetFileSystem;
+    private final S3AsyncClient s3Async;
+    private final long partSize;
+    private final int parallelism;
+
+    ServerSideCopy(S3FileSystem sourceFileSystem, S3FileSystem targetFileSystem) {
+        this.sourceFileSystem = sourceFileSystem;
+        this.targetFileSystem = targetFileSystem;
+        this.s3Async = targetFileSystem.getS3AsyncClient();
+        this.partSize = targetFileSystem.getSettings().getCopyPartSize();
+        this.parallelism = targetFileSystem.getSettings().getCopyParallelism();
+    }
+
+    void copy(String sourceBucket, String sourceKey, String targetBucket, String targetKey) throws IOException {
+        HeadObjectResponse source;
+        try {
+            source = sourceFileSystem.getS3Client().headObject(HeadObjectRequest.builder().bucket(sourceBucket).key(sourceKey).build());
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException("s3://" + sourceBucket + "/" + sourceKey);
+        }
+
+        String copySource = copySource(sourceBucket, sourceKey);
+        if (source.contentLength() <= partSize) {
+            CopyObjectRequest request = CopyObjectRequest.builder()
+                                                         .copySource(copySource)
+                                                         .copySourceIfMatch(source.eTag())
+                                                         .bucket(targetBucket)
+                                                         .key(targetKey)
+                                                         .build();
+            RangeFetcher.await(s3Async.copyObject(request));
+        } else {
+            copyParts(source, copySource, targetBucket, targetKey);
+        }
+        targetFileSystem.getMetadataCache().invalidate(targetBucket, targetKey);
+    }
+
+    private void copyParts(HeadObjectResponse source, String copySource, String bucket, String key) throws IOException {
+        long size = source.contentLength();
+        // very large objects need bigger parts to stay under the part count limit
+        long partSize = Math.max(this.partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+
+        // UploadPartCopy doesn't carry the source's headers over, unlike CopyObject
+        CreateMultipartUploadRequest create = CreateMultipartUploadRequest.builder()
+                                                                          .bucket(bucket)
+                                                                          .key(key)
+                                                                          .contentType(source.contentType())
+                                                                          .contentEncoding(source.contentEncoding())
+                                                                          .cacheControl(source.cacheControl())
+                                                                          .contentDisposition(source.contentDisposition())
+                                                                          .metadata(source.metadata())
+                                                                          .build();
+        String uploadId = RangeFetcher.await(s3Async.createMultipartUpload(create)).uploadId();
+
+        Semaphore permits = new Semaphore(parallelism);
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            for (long offset = 0; offset < size; offset += partSize) {
+                int partNumber = parts.size() + 1;
+                long end = Math.min(size, offset + partSize) - 1;
+                UploadPartCopyRequest request = UploadPartCopyRequest.builder()
+                                                                     .copySource(copySource)
+                                                                     .copySourceIfMatch(source.eTag())
+                                                                     .copySourceRange(String.format("bytes=%d-%d", offset, end))
+                                                                     .bucket(bucket)
+                                                                     .key(key)
+                                                                     .uploadId(uploadId)
+                                                                     .partNumber(partNumber)
+                                                                     .build();
+                acquire(permits);
+                // the copy is lost once a part fails, the ones still to issue would only be billed and thrown away
+                if (failed.get()) {
+                    permits.release();
+                    break;
+                }
+                CompletableFuture<CompletedPart> part = s3Async.uploadPartCopy(request)
+                        .thenApply(response -> CompletedPart.builder()
+                                                            .partNumber(partNumber)
+                                                            .eTag(response.copyPartResult().eTag())
+                                                            .build());
+                part.whenComplete((completed, error) -> {
+                    if (error != null)
+                        failed.set(true);
+                    permits.release();
+                });
+                parts.add(part);
+            }
+
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completed.add(RangeFetcher.await(part));
+            }
+            CompleteMultipartUploadRequest complete = CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build();
+            RangeFetcher.await(s3Async.completeMultipartUpload(complete));
+        } catch (IOException | RuntimeException e) {
+            abortMultipartUpload(bucket, key, uploadId, parts, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Aborts the upload {@code cause} made fail, waiting for S3 to confirm, the same way
+     * {@link S3WritableByteChannel} does: an upload left behind keeps its parts billed, so a failed abort is reported
+     * along with {@code cause}.
+     */
+    private void abortMultipartUpload(String bucket, String key, String uploadId,
+                                      List<CompletableFuture<CompletedPart>> parts, Exception cause) {
+        // let in flight parts drain first, S3 may otherwise keep parts that land after the abort
+        for (CompletableFuture<CompletedPart> part : parts) {
+            part.handle((completed, error) -> null).join();
+        }
+        AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                                                                         .bucket(bucket)
+                                                                         .key(key)
+                                                                         .uploadId(uploadId)
+                                                                         .build();
+        try {
+            RangeFetcher.await(s3Async.abortMultipartUpload(request));
+        } catch (IOException | RuntimeException e) {
+            cause.addSuppressed(new IOException("Abort of multipart upload " + uploadId + " of s3://" + bucket + "/" +
+                                                key + " failed", e));
+        }
+    }
+
+    private static void acquire(Semaphore permits) throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * The {@code x-amz-copy-source} header: bucket and key, URL encoded except for the slashes.
+     */
+    static String copySource(String bucket, String key) {
+        try {
+            return URLEncoder.encode(bucket + UnixPath.SEPARATOR + key, "UTF-8")
+                             .replace("+", "%20")
+                             .replace("%2F", "/");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -1,24 +1,29 @@
 package com.github.fcofdez.s3fs;
 
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 
 import static com.github.fcofdez.s3fs.Util.checkArgument;
 
+/**
+ * A {@code /} separated path. Names are located through the offsets where each one starts, computed on first use, so
+ * counting, comparing and iterating names doesn't allocate; only the paths handed out do.
+ */
 final class UnixPath implements CharSequence {
     static final char SEPARATOR = '/';
     private static final String ROOT = "" + SEPARATOR;
-    private static final String CURRENT_DIR = ".";
     private static final String PARENT_DIR = "..";
 
 
     private static final UnixPath ROOT_PATH = new UnixPath(ROOT);
     private static final UnixPath EMPTY_PATH = new UnixPath("");
+    private static final int[] NO_NAMES = new int[0];
+    // the empty path has a single, empty, name
+    private static final int[] EMPTY_NAME = {0};
 
     private final String path;
-    private List<String> splittedPath;
+    // where each name starts, computed lazily, racing threads compute the same thing
+    private int[] offsets;
 
     private UnixPath(String path) {
         this.path = path;
@@ -109,7 +114,29 @@ final class UnixPath implements CharSequence {
      * @see java.nio.file.Path#relativize(java.nio.file.Path)
      */
     public UnixPath relativize(UnixPath other) {
-        return other;
+        checkArgument(isAbsolute() == other.isAbsolute(), "'%s' and '%s' must both be absolute or relative", path, other.path);
+        if (isEmpty())
+            return other;
+
+        int count = getNameCount();
+        int otherCount = other.getNameCount();
+        int common = 0;
+        while (common < count && common < otherCount && nameEquals(common, other, common)) {
+            common++;
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (int i = common; i < count; i++) {
+            if (result.length() > 0)
+                result.append(SEPARATOR);
+            result.append(PARENT_DIR);
+        }
+        if (common < otherCount) {
+            if (result.length() > 0)
+                result.append(SEPARATOR);
+            result.append(other.path, other.offsets()[common], other.nameEnd(otherCount - 1));
+        }
+        return createPath(result.toString());
     }
 
     /**
@@ -118,7 +145,20 @@ final class UnixPath implements CharSequence {
      * @see java.nio.file.Path#startsWith(java.nio.file.Path)
      */
     public boolean startsWith(UnixPath other) {
-        return false;
+        if (isAbsolute() != other.isAbsolute())
+            return false;
+        if (other.isEmpty())
+            return isEmpty();
+
+        int otherCount = other.getNameCount();
+        if (otherCount > getNameCount())
+            return false;
+
+        for (int i = 0; i < otherCount; i++) {
+            if (!nameEquals(i, other, i))
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -127,7 +167,104 @@ final class UnixPath implements CharSequence {
      * @see java.nio.file.Path#endsWith(java.nio.file.Path)
      */
     public boolean endsWith(UnixPath other) {
-        return false;
+        if (other.isAbsolute() && !isAbsolute())
+            return false;
+        if (other.isEmpty())
+            return isEmpty();
+
+        int count = getNameCount();
+        int otherCount = other.getNameCount();
+        if (otherCount > count || (other.isAbsolute() && otherCount != count))
+            return false;
+
+        for (int i = 1; i <= otherCount; i++) {
+            if (!nameEquals(count - i, other, otherCount - i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Number of names, 0 for the root and 1 for the empty path.
+     *
+     * @see java.nio.file.Path#getNameCount()
+     */
+    int getNameCount() {
+        return offsets().length;
+    }
+
+    UnixPath getName(int index) {
+        checkArgument(index >= 0 && index < getNameCount(), "Name index %d out of bounds for '%s'", index, path);
+        return createPath(path.substring(offsets()[index], nameEnd(index)));
+    }
+
+    /**
+     * Returns the names from {@code beginIndex} inclusive to {@code endIndex} exclusive as a relative path.
+     *
+     * @see java.nio.file.Path#subpath(int, int)
+     */
+    UnixPath subpath(int beginIndex, int endIndex) {
+        checkArgument(beginIndex >= 0 && beginIndex < endIndex && endIndex <= getNameCount(),
+                      "Invalid subpath [%d, %d) of '%s'", beginIndex, endIndex, path);
+        return createPath(path.substring(offsets()[beginIndex], nameEnd(endIndex - 1)));
+    }
+
+    /**
+     * Returns the last name, {@code null} for the root.
+     */
+    UnixPath getFileName() {
+        int count = getNameCount();
+        if (count == 0)
+            return null;
+        if (count == 1 && !isAbsolute() && !hasTrailingSeparator())
+            return this;
+        return getName(count - 1);
+    }
+
+    private boolean nameEquals(int index, UnixPath other, int otherIndex) {
+        int start = offsets()[index];
+        int length = nameEnd(index) - start;
+        int otherStart = other.offsets()[otherIndex];
+        return length == other.nameEnd(otherIndex) - otherStart && path.regionMatches(start, other.path, otherStart, length);
+    }
+
+    private int nameEnd(int index) {
+        int end = path.indexOf(SEPARATOR, offsets()[index]);
+        return end == -1 ? path.length() : end;
+    }
+
+    private int[] offsets() {
+        int[] result = offsets;
+        if (result == null) {
+            result = computeOffsets(path);
+            offsets = result;
+        }
+        return result;
+    }
+
+    private static int[] computeOffsets(String path) {
+        if (path.isEmpty())
+            return EMPTY_NAME;
+
+        int count = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (isNameStart(path, i))
+                count++;
+        }
+        if (count == 0)
+            return NO_NAMES;
+
+        int[] result = new int[count];
+        count = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (isNameStart(path, i))
+                result[count++] = i;
+        }
+        return result;
+    }
+
+    private static boolean isNameStart(String path, int index) {
+        return path.charAt(index) != SEPARATOR && (index == 0 || path.charAt(index - 1) == SEPARATOR);
     }
 
     /**
@@ -178,59 +315,74 @@ final class UnixPath implements CharSequence {
         return Objects.hash(path);
     }
 
-    UnixPath getFileName() {
-        return this;
-    }
-
     /**
-     * /adasd/./asd/aasd/../
-     * @return
+     * Drops {@code .} names, {@code ..} names along with the name before them, and repeated separators. Returns this
+     * same path when there's nothing to drop. Leading {@code ..} names are kept in relative paths and dropped from
+     * absolute ones, there's nothing above the root.
+     *
      * @see Path#normalize()
      */
     UnixPath normalize() {
-        int mark = 0;
-
-        boolean mutated = false;
-        int index;
-        int resultSize = 0;
-        List<String> parts = new ArrayList<>();
-        do {
-            index = path.indexOf(SEPARATOR, mark);
-
-            String part = path.substring(mark, index == -1 ? path.length() : index + 1);
-
-            switch (part) {
-                case CURRENT_DIR:
-                case CURRENT_DIR + SEPARATOR:
-                    mutated = true;
-                    break;
-                case PARENT_DIR:
-                case PARENT_DIR + SEPARATOR:
-                    mutated = true;
-                    if (!parts.isEmpty()) {
-                        resultSize -= parts.remove(parts.size() - 1).length();
-                    }
-                    break;
-                default:
-                    if (index != mark || index == 0) {
-                        parts.add(part);
-                        resultSize += part.length();
-                    } else {
-                        mutated = true;
-                    }
+        int count = getNameCount();
+        // indices of the names kept, a stack since .. pops the name before it; only allocated if something is dropped
+        int[] kept = null;
+        int keptCount = 0;
+        for (int i = 0; i < count; i++) {
+            boolean current = isDot(i, 1);
+            boolean parent = isDot(i, 2);
+            if (kept == null) {
+                if (!current && !parent)
+                    continue;
+                kept = new int[count];
+                for (keptCount = 0; keptCount < i; keptCount++) {
+                    kept[keptCount] = keptCount;
+                }
             }
 
-            mark = index + 1;
-        } while (index != -1);
+            if (current)
+                continue;
 
-        if (!mutated)
-            return this;
+            if (parent && keptCount > 0 && !isDot(kept[keptCount - 1], 2)) {
+                keptCount--;
+            } else if (!parent || !isAbsolute()) {
+                kept[keptCount++] = i;
+            }
+        }
+
+        if (kept == null) {
+            if (path.indexOf(ROOT + SEPARATOR) == -1)
+                return this;
 
-        StringBuilder result = new StringBuilder(resultSize);
-        for (String part : parts) {
-            result.append(part);
+            kept = new int[count];
+            for (keptCount = 0; keptCount < count; keptCount++) {
+                kept[keptCount] = keptCount;
+            }
+        }
+
+        StringBuilder result = new StringBuilder(path.length());
+        if (isAbsolute())
+            result.append(SEPARATOR);
+        for (int i = 0; i < keptCount; i++) {
+            if (i > 0)
+                result.append(SEPARATOR);
+            result.append(path, offsets()[kept[i]], nameEnd(kept[i]));
         }
+        if (hasTrailingSeparator() && keptCount > 0)
+            result.append(SEPARATOR);
+        return createPath(result.toString());
+    }
 
-        return new UnixPath(result.toString());
+    /**
+     * Returns {@code true} if name {@code index} is {@code dots} dots, {@code .} or {@code ..}.
+     */
+    private boolean isDot(int index, int dots) {
+        int start = offsets()[index];
+        if (nameEnd(index) - start != dots)
+            return false;
+        for (int i = start; i < start + dots; i++) {
+            if (path.charAt(i) != '.')
+                return false;
+        }
+        return true;
     }
 }
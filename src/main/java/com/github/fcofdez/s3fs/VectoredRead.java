@@ -0,0 +1,224 @@
+package com.github.fcofdez.s3fs;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+/**
+ * Reads a set of ranges of one object with as few GETs as possible.
+ *
+ * Ranges closer than {@code maxGap} bytes are merged into a single request as long as the merged request stays under
+ * {@code maxMergedSize}. Merged requests run concurrently, and each range completes as soon as its own bytes have been
+ * received rather than when the whole merged request finishes. Bytes in the gaps are discarded.
+ */
+final class VectoredRead {
+    private final RangeFetcher fetcher;
+    private final int maxGap;
+    private final int maxMergedSize;
+
+    VectoredRead(RangeFetcher fetcher, int maxGap, int maxMergedSize) {
+        this.fetcher = fetcher;
+        this.maxGap = maxGap;
+        this.maxMergedSize = maxMergedSize;
+    }
+
+    /**
+     * Overlapping ranges are rejected up front, before any range completes.
+     */
+    void read(List<? extends FileRange> ranges, long size, IntFunction<ByteBuffer> allocate) {
+        List<FileRange> sorted = sortDisjoint(ranges);
+        List<FileRange> valid = new ArrayList<>(sorted.size());
+        for (FileRange range : sorted) {
+            if (range.getEnd() > size) {
+                range.getData().completeExceptionally(new EOFException("Range " + range + " is beyond the end of s3://" +
+                                                                       fetcher.bucket() + "/" + fetcher.key() + " (" + size + " bytes)"));
+            } else if (range.getLength() == 0) {
+                range.getData().complete(allocate.apply(0));
+            } else {
+                valid.add(range);
+            }
+        }
+
+        for (CombinedRange combined : coalesce(valid, maxGap, maxMergedSize)) {
+            fetcher.fetch(combined.offset, combined.length(), new IntoRanges(combined, allocate, fetcher.metrics()))
+                   .whenComplete((ignored, error) -> {
+                       if (error != null)
+                           combined.fail(error);
+                   });
+        }
+    }
+
+    /**
+     * Sorts {@code ranges} and merges neighbours. Overlapping ranges are rejected.
+     */
+    static List<CombinedRange> coalesce(List<? extends FileRange> ranges, int maxGap, int maxMergedSize) {
+        List<CombinedRange> combined = new ArrayList<>();
+        CombinedRange current = null;
+        for (FileRange range : sortDisjoint(ranges)) {
+            if (current != null && range.getOffset() - current.end <= maxGap && range.getEnd() - current.offset <= maxMergedSize) {
+                current.add(range);
+            } else {
+                current = new CombinedRange(range);
+                combined.add(current);
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * {@code ranges} sorted by offset, rejecting any two that share a byte. Empty ranges share none.
+     */
+    private static List<FileRange> sortDisjoint(List<? extends FileRange> ranges) {
+        List<FileRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(FileRange::getOffset));
+
+        FileRange previous = null;
+        for (FileRange range : sorted) {
+            if (range.getLength() == 0)
+                continue;
+            if (previous != null && range.getOffset() < previous.getEnd())
+                throw new IllegalArgumentException("Overlapping ranges " + previous + " and " + range);
+            previous = range;
+        }
+        return sorted;
+    }
+
+    static final class CombinedRange {
+        final long offset;
+        long end;
+        final List<FileRange> ranges = new ArrayList<>();
+
+        CombinedRange(FileRange first) {
+            this.offset = first.getOffset();
+            add(first);
+        }
+
+        void add(FileRange range) {
+            ranges.add(range);
+            end = range.getEnd();
+        }
+
+        int length() {
+            return (int) (end - offset);
+        }
+
+        List<FileRange> ranges() {
+            return Collections.unmodifiableList(ranges);
+        }
+
+        void fail(Throwable error) {
+            for (FileRange range : ranges) {
+                range.getData().completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Scatters the body of a merged GET into one buffer per range, completing each range once it is full.
+     */
+    private static final class IntoRanges implements AsyncResponseTransformer<GetObjectResponse, Void> {
+        private final CombinedRange combined;
+        private final IntFunction<ByteBuffer> allocate;
+        private final S3Metrics metrics;
+        private volatile CompletableFuture<Void> future;
+
+        IntoRanges(CombinedRange combined, IntFunction<ByteBuffer> allocate, S3Metrics metrics) {
+            this.combined = combined;
+            this.allocate = allocate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public CompletableFuture<Void> prepare() {
+            future = new CompletableFuture<>();
+            return future;
+        }
+
+        @Override
+        public void onResponse(GetObjectResponse response) {
+        }
+
+        @Override
+        public void onStream(SdkPublisher<ByteBuffer> publisher) {
+            publisher.subscribe(new Subscriber<ByteBuffer>() {
+                private final List<FileRange> ranges = combined.ranges;
+                private int current;
+                private ByteBuffer target;
+                // object offset of the next byte received
+                private long offset = combined.offset;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ByteBuffer chunk) {
+                    metrics.addBytesRead(chunk.remaining());
+                    while (chunk.hasRemaining() && current < ranges.size()) {
+                        FileRange range = ranges.get(current);
+                        if (offset < range.getOffset()) {
+                            int skip = (int) Math.min(chunk.remaining(), range.getOffset() - offset);
+                            chunk.position(chunk.position() + skip);
+                            offset += skip;
+                            continue;
+                        }
+
+                        if (target == null)
+                            target = allocate.apply(range.getLength());
+
+                        int length = (int) Math.min(chunk.remaining(), range.getEnd() - offset);
+                        ByteBuffer slice = chunk.duplicate();
+                        slice.limit(slice.position() + length);
+                        target.put(slice);
+                        chunk.position(chunk.position() + length);
+                        offset += length;
+
+                        if (offset == range.getEnd()) {
+                            target.flip();
+                            range.getData().complete(target);
+                            target = null;
+                            current++;
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    fail(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    if (current < ranges.size()) {
+                        fail(new EOFException("Response ended before " + ranges.get(current) + " was complete"));
+                    } else {
+                        future.complete(null);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void exceptionOccurred(Throwable error) {
+            fail(error);
+        }
+
+        private void fail(Throwable error) {
+            combined.fail(error instanceof IOException ? error : new IOException(error));
+            future.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class BlockCacheTest extends TestCase
+{
+    private static final int BLOCK_SIZE = 100;
+
+    public void testHitReturnsCopyOfCachedBytes()
+    {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 10 * BLOCK_SIZE, null);
+        assertNull(cache.get(key(0)));
+
+        ByteBuffer data = block(7);
+        cache.put(key(0), data);
+        // the cache kept its own copy
+        data.put(0, (byte) 1);
+
+        ByteBuffer cached = cache.get(key(0));
+        assertTrue(cached.isReadOnly());
+        assertEquals(0, cached.position());
+        assertEquals(block(7), cached);
+        assertNull(cache.get(new BlockCache.BlockKey("bucket", "key", "other-etag", 0)));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(BLOCK_SIZE, cache.getUsedBytes());
+    }
+
+    public void testEvictsLeastRecentlyUsedBlockBeyondCapacity()
+    {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 10 * BLOCK_SIZE, null);
+        for (int i = 0; i <= 10; i++) {
+            cache.put(key(i), block(i));
+        }
+
+        assertEquals(10 * BLOCK_SIZE, cache.getUsedBytes());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(key(0)));
+        assertNotNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(10)));
+    }
+
+    public void testScanDoesNotEvictBlocksReadAgain()
+    {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 10 * BLOCK_SIZE, null);
+        cache.put(key(0), block(0));
+        // promoted to the protected segment
+        assertNotNull(cache.get(key(0)));
+
+        for (int i = 1; i <= 50; i++) {
+            cache.put(key(i), block(i));
+        }
+
+        assertNotNull(cache.get(key(0)));
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(50)));
+        assertTrue(cache.getUsedBytes() <= cache.getCapacity());
+    }
+
+    public void testProtectedOverflowIsDemotedToProbation()
+    {
+        // the protected segment holds 8 blocks
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 10 * BLOCK_SIZE, null);
+        for (int i = 0; i < 9; i++) {
+            cache.put(key(i), block(i));
+        }
+        for (int i = 0; i < 9; i++) {
+            assertNotNull(cache.get(key(i)));
+        }
+        assertEquals(0, cache.getEvictionCount());
+
+        // key 0 was demoted, it's now the first to go
+        cache.put(key(100), block(100));
+        cache.put(key(101), block(101));
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(key(0)));
+        for (int i = 1; i < 9; i++) {
+            assertNotNull(cache.get(key(i)));
+        }
+    }
+
+    public void testInvalidateDropsOnlyThatVersion()
+    {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 10 * BLOCK_SIZE, null);
+        cache.put(key(0), block(0));
+        cache.put(key(1), block(1));
+        assertNotNull(cache.get(key(1)));
+        BlockCache.BlockKey newer = new BlockCache.BlockKey("bucket", "key", "newer", 0);
+        cache.put(newer, block(2));
+
+        cache.invalidate("bucket", "key", "etag");
+        assertNull(cache.get(key(0)));
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(newer));
+        assertEquals(BLOCK_SIZE, cache.getUsedBytes());
+    }
+
+    public void testBlockLargerThanCapacityIsNotCached()
+    {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, BLOCK_SIZE - 1, null);
+        cache.put(key(0), block(0));
+        assertNull(cache.get(key(0)));
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    private static BlockCache.BlockKey key(long index)
+    {
+        return new BlockCache.BlockKey("bucket", "key", "etag", index);
+    }
+
+    private static ByteBuffer block(int fill)
+    {
+        byte[] bytes = new byte[BLOCK_SIZE];
+        Arrays.fill(bytes, (byte) fill);
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+public class BucketRegionsTest extends TestCase
+{
+    private final BucketRegions regions = new BucketRegions();
+    private final HeadBucket client = new HeadBucket();
+
+    public void testRegionOfAccessibleBucket()
+    {
+        client.answer(() -> found("eu-west-1"));
+
+        assertEquals(Region.EU_WEST_1, regions.lookup("bucket", client));
+        assertEquals(Region.EU_WEST_1, regions.get("bucket"));
+    }
+
+    public void testRegionOfRedirectedBucket()
+    {
+        client.answer(() -> { throw error(301, "ap-south-1"); });
+
+        assertEquals(Region.of("ap-south-1"), regions.lookup("bucket", client));
+        assertEquals(Region.of("ap-south-1"), regions.get("bucket"));
+    }
+
+    public void testRegionOfForbiddenBucket()
+    {
+        client.answer(() -> { throw error(403, "eu-central-1"); });
+
+        assertEquals(Region.of("eu-central-1"), regions.lookup("bucket", client));
+        assertEquals(Region.of("eu-central-1"), regions.get("bucket"));
+    }
+
+    public void testGuessedRegionIsNotRemembered()
+    {
+        client.answer(() -> { throw error(403, null); });
+        client.answer(() -> found("eu-west-1"));
+
+        assertEquals(BucketRegions.LOOKUP_REGION, regions.lookup("bucket", client));
+        assertNull(regions.get("bucket"));
+        // asked again, and this time S3 tells
+        assertEquals(Region.EU_WEST_1, regions.lookup("bucket", client));
+        assertEquals(Region.EU_WEST_1, regions.get("bucket"));
+    }
+
+    public void testOtherErrorsPropagate()
+    {
+        client.answer(() -> { throw error(500, null); });
+        try {
+            regions.lookup("bucket", client);
+            fail();
+        } catch (S3Exception expected) {
+        }
+        assertNull(regions.get("bucket"));
+    }
+
+    private static HeadBucketResponse found(String region)
+    {
+        return (HeadBucketResponse) HeadBucketResponse.builder().sdkHttpResponse(http(200, region)).build();
+    }
+
+    private static SdkHttpResponse http(int status, String region)
+    {
+        SdkHttpResponse.Builder response = SdkHttpResponse.builder().statusCode(status);
+        if (region != null)
+            response.putHeader(BucketRegions.REGION_HEADER, region);
+        return response.build();
+    }
+
+    private static S3Exception error(int status, String region)
+    {
+        return (S3Exception) S3Exception.builder()
+                                        .statusCode(status)
+                                        .awsErrorDetails(AwsErrorDetails.builder().sdkHttpResponse(http(status, region)).build())
+                                        .build();
+    }
+
+    /**
+     * Answers HeadBucket requests with the queued answers, one each.
+     */
+    private static final class HeadBucket implements S3Client
+    {
+        private final Deque<Supplier<HeadBucketResponse>> answers = new ArrayDeque<>();
+
+        void answer(Supplier<HeadBucketResponse> answer)
+        {
+            answers.addLast(answer);
+        }
+
+        @Override
+        public HeadBucketResponse headBucket(HeadBucketRequest request)
+        {
+            return answers.removeFirst().get();
+        }
+
+        @Override
+        public String serviceName()
+        {
+            return "s3";
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+public class BufferPoolTest extends TestCase
+{
+    public void testReusesReleasedBuffers()
+    {
+        BufferPool pool = new BufferPool(4 * BufferPool.MIN_SIZE);
+        ByteBuffer buffer = pool.acquireAsync(1000).join();
+        assertEquals(1000, buffer.limit());
+        pool.release(buffer);
+
+        assertSame(buffer, pool.acquireAsync(BufferPool.MIN_SIZE).join());
+        assertEquals(BufferPool.MIN_SIZE, pool.getAllocatedBytes());
+        assertEquals(BufferPool.MIN_SIZE, pool.getUsedBytes());
+    }
+
+    public void testWaitsWhenExhausted()
+    {
+        BufferPool pool = new BufferPool(2 * BufferPool.MIN_SIZE);
+        ByteBuffer first = pool.acquireAsync(2 * BufferPool.MIN_SIZE).join();
+
+        CompletableFuture<ByteBuffer> pending = pool.acquireAsync(BufferPool.MIN_SIZE);
+        assertFalse(pending.isDone());
+        assertEquals(1, pool.getWaitingCount());
+        assertEquals(1, pool.getWaitCount());
+
+        // the idle larger buffer is dropped to make room for the smaller one
+        pool.release(first);
+        assertTrue(pending.isDone());
+        assertEquals(BufferPool.MIN_SIZE, pool.getAllocatedBytes());
+    }
+
+    public void testCancelledWaiterDoesNotHoldBackOthers()
+    {
+        BufferPool pool = new BufferPool(2 * BufferPool.MIN_SIZE);
+        ByteBuffer first = pool.acquireAsync(BufferPool.MIN_SIZE).join();
+
+        CompletableFuture<ByteBuffer> large = pool.acquireAsync(2 * BufferPool.MIN_SIZE);
+        CompletableFuture<ByteBuffer> small = pool.acquireAsync(BufferPool.MIN_SIZE);
+        assertFalse(small.isDone());
+
+        large.cancel(false);
+        assertTrue(small.isDone());
+        assertEquals(2 * BufferPool.MIN_SIZE, pool.getUsedBytes());
+
+        pool.release(first);
+        pool.release(small.join());
+        assertEquals(0, pool.getUsedBytes());
+    }
+
+    public void testHeapAndDirectBuffersShareCapacity() throws Exception
+    {
+        BufferPool pool = new BufferPool(2 * BufferPool.MIN_SIZE);
+        ByteBuffer heap = pool.acquire(BufferPool.MIN_SIZE, false);
+        assertFalse(heap.isDirect());
+        assertEquals(0, heap.arrayOffset());
+        pool.release(heap);
+        assertSame(heap, pool.acquire(BufferPool.MIN_SIZE, false));
+        pool.release(heap);
+
+        // the idle heap buffer makes room for a direct one
+        ByteBuffer direct = pool.acquire(2 * BufferPool.MIN_SIZE);
+        assertTrue(direct.isDirect());
+        assertEquals(2 * BufferPool.MIN_SIZE, pool.getAllocatedBytes());
+
+        CompletableFuture<ByteBuffer> pending = pool.acquireAsync(BufferPool.MIN_SIZE);
+        assertFalse(pending.isDone());
+        pool.release(direct);
+        assertTrue(pending.isDone());
+    }
+
+    public void testRejectsBuffersLargerThanCapacity()
+    {
+        BufferPool pool = new BufferPool(BufferPool.MIN_SIZE);
+        try {
+            pool.acquireAsync(BufferPool.MIN_SIZE + 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testBlockingAcquireFailsAfterMaxWait() throws Exception
+    {
+        BufferPool pool = new BufferPool(BufferPool.MIN_SIZE, 10);
+        ByteBuffer held = pool.acquire(BufferPool.MIN_SIZE);
+
+        try {
+            pool.acquire(1000);
+            fail("the pool must not allocate past its capacity");
+        } catch (IOException expected) {
+        }
+        assertEquals(0, pool.getWaitingCount());
+        assertEquals(BufferPool.MIN_SIZE, pool.getAllocatedBytes());
+
+        pool.release(held);
+        assertSame(held, pool.acquire(BufferPool.MIN_SIZE));
+    }
+
+    public void testSettingsMustFitThePool()
+    {
+        S3FSSettings.Builder builder = S3FSSettings.builder().setBufferPoolCapacity(4 * 1024 * 1024);
+        try {
+            builder.createS3FSSettings();
+            fail("the default readahead, prefetch block and part sizes take 8 MB buffers");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        builder.setMaxReadahead(4 * 1024 * 1024)
+               .setPrefetchBlockSize(4 * 1024 * 1024)
+               .setMultipartPartSize(S3FSSettings.MIN_MULTIPART_PART_SIZE);
+        try {
+            // 5 MB parts are staged in 8 MB buffers
+            builder.createS3FSSettings();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        builder.setBufferPoolCapacity(8 * 1024 * 1024).createS3FSSettings();
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class BulkDeleteTest extends TestCase
+{
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder().setDeleteParallelism(2).createS3FSSettings());
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testDeletesTreeInBatches() throws IOException
+    {
+        s3.put("dir", new byte[1]);
+        s3.put("dir/", new byte[0]);
+        for (int i = 0; i < 2500; i++) {
+            s3.put(String.format("dir/%d/%04d", i % 7, i), new byte[1]);
+        }
+        s3.put("dirx", new byte[1]);
+
+        DeleteReport report = fileSystem.deleteRecursively(fileSystem.getPath("/dir"));
+
+        assertTrue(report.isComplete());
+        assertEquals(2502, report.getDeletedCount());
+        assertEquals(3, s3.requests("DeleteObjects"));
+        assertNull(s3.get("dir"));
+        assertNull(s3.get("dir/"));
+        assertNotNull(s3.get("dirx"));
+    }
+
+    public void testRefusedKeysAreReported() throws IOException
+    {
+        s3.put("dir/a", new byte[1]);
+        s3.put("dir/b", new byte[1]);
+        s3.put("dir/c", new byte[1]);
+        s3.failDelete("dir/b");
+
+        DeleteReport report = fileSystem.deleteRecursively(fileSystem.getPath("/dir"));
+
+        assertFalse(report.isComplete());
+        assertEquals(2, report.getDeletedCount());
+        assertEquals(1, report.getFailures().size());
+        DeleteReport.Failure failure = report.getFailures().get(0);
+        assertEquals("dir/b", failure.getKey());
+        assertEquals("AccessDenied", failure.getCode());
+        assertNotNull(s3.get("dir/b"));
+    }
+
+    public void testFailedRequestReportsEveryKey() throws IOException
+    {
+        s3.failDeleteObjects();
+        List<Path> paths = Arrays.asList(fileSystem.getPath("/a"), fileSystem.getPath("/b"));
+        s3.put("a", new byte[1]);
+        s3.put("b", new byte[1]);
+
+        DeleteReport report = fileSystem.deleteAll(paths);
+
+        assertEquals(0, report.getDeletedCount());
+        assertEquals(2, report.getFailures().size());
+        assertNotNull(s3.get("a"));
+    }
+
+    public void testDeleteAllNeedsNoListing() throws IOException
+    {
+        s3.put("a", new byte[1]);
+        s3.put("dir/b", new byte[1]);
+
+        DeleteReport report = fileSystem.deleteAll(Arrays.asList(fileSystem.getPath("/a"), fileSystem.getPath("dir", "b")));
+
+        assertEquals(2, report.getDeletedCount());
+        assertNull(s3.get("a"));
+        assertNull(s3.get("dir/b"));
+        assertEquals(0, s3.requests("ListObjectsV2"));
+    }
+}
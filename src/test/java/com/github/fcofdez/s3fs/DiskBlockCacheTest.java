@@ -0,0 +1,137 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class DiskBlockCacheTest extends TestCase
+{
+    private static final int BLOCK_SIZE = 100;
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("s3fs-disk-cache");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    public void testReadsBackWrittenBlock() throws IOException
+    {
+        DiskBlockCache cache = cache(10_000);
+        assertNull(cache.get(key("etag", 0)));
+
+        cache.put(key("etag", 0), block(3));
+        ByteBuffer cached = cache.get(key("etag", 0));
+        assertEquals(block(3), cached);
+        assertTrue(cache.getUsedBytes() > BLOCK_SIZE);
+        assertNull(cache.get(key("etag", 1)));
+    }
+
+    public void testOtherVersionIsDropped() throws IOException
+    {
+        DiskBlockCache cache = cache(10_000);
+        cache.put(key("etag", 0), block(3));
+
+        // same file name, the header tells the versions apart
+        assertNull(cache.get(key("newer", 0)));
+        assertEquals(0, cache.getUsedBytes());
+        assertNull(cache.get(key("etag", 0)));
+    }
+
+    public void testEvictsLeastRecentlyUsedBeyondCapacity() throws IOException
+    {
+        DiskBlockCache cache = cache(10_000);
+        cache.put(key("etag", 0), block(0));
+        long blockBytes = cache.getUsedBytes();
+
+        cache = cache(2 * blockBytes);
+        cache.put(key("etag", 1), block(1));
+        assertNotNull(cache.get(key("etag", 0)));
+        cache.put(key("etag", 2), block(2));
+
+        assertEquals(2 * blockBytes, cache.getUsedBytes());
+        assertNull(cache.get(key("etag", 1)));
+        assertNotNull(cache.get(key("etag", 0)));
+        assertNotNull(cache.get(key("etag", 2)));
+    }
+
+    public void testIndexSurvivesRestart() throws IOException
+    {
+        DiskBlockCache cache = cache(10_000);
+        cache.put(key("etag", 0), block(5));
+        long usedBytes = cache.getUsedBytes();
+        cache.close();
+
+        Files.write(directory.resolve("interrupted.0.blk.tmp"), new byte[10]);
+        cache = cache(10_000);
+        assertEquals(usedBytes, cache.getUsedBytes());
+        assertEquals(block(5), cache.get(key("etag", 0)));
+        assertFalse(Files.exists(directory.resolve("interrupted.0.blk.tmp")));
+    }
+
+    public void testCorruptFileIsDropped() throws IOException
+    {
+        DiskBlockCache cache = cache(10_000);
+        cache.put(key("etag", 0), block(5));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.write(file, new byte[] {1, 2, 3});
+            }
+        }
+
+        assertNull(cache.get(key("etag", 0)));
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    public void testCorruptLengthIsDropped() throws IOException
+    {
+        DiskBlockCache cache = cache(10_000);
+        cache.put(key("etag", 0), block(5));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                byte[] bytes = Files.readAllBytes(file);
+                // the bucket length, right after the magic number
+                ByteBuffer.wrap(bytes).putInt(4, Integer.MAX_VALUE - 8);
+                Files.write(file, bytes);
+            }
+        }
+
+        assertNull(cache.get(key("etag", 0)));
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    private DiskBlockCache cache(long capacity) throws IOException
+    {
+        // writes happen on the calling thread
+        return new DiskBlockCache(directory, capacity, Runnable::run);
+    }
+
+    private static BlockCache.BlockKey key(String eTag, long index)
+    {
+        return new BlockCache.BlockKey("bucket", "key", eTag, index);
+    }
+
+    private static ByteBuffer block(int fill)
+    {
+        byte[] bytes = new byte[BLOCK_SIZE];
+        Arrays.fill(bytes, (byte) fill);
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class FlatListingTest extends TestCase
+{
+    private static final S3Attributes FILE = S3Attributes.of(new S3ObjectMetadata(1, "\"etag\"", Instant.EPOCH, null));
+
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setListingParallelism(1)
+                                                  .setListingMaxFlatKeys(5)
+                                                  .createS3FSSettings());
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testMarkersOnlyCreateDirectories() throws IOException
+    {
+        FlatListing.Directory tree = new FlatListing.Directory();
+        tree.add("a/", FILE);
+        tree.add("a/b/", FILE);
+
+        assertEquals(Collections.singletonList("a/"), entries(tree, "/"));
+        assertEquals(Collections.singletonList("b/"), entries(tree, "/a"));
+        assertEquals(Collections.emptyList(), entries(tree, "/a/b"));
+    }
+
+    public void testRepeatedSeparatorsAreSkipped() throws IOException
+    {
+        FlatListing.Directory tree = new FlatListing.Directory();
+        tree.add("a//b", FILE);
+        tree.add("/c", FILE);
+
+        assertEquals(Arrays.asList("c", "a/"), entries(tree, "/"));
+        assertEquals(Collections.singletonList("b"), entries(tree, "/a"));
+    }
+
+    public void testObjectAndDirectoryOfSameName() throws IOException
+    {
+        FlatListing.Directory tree = new FlatListing.Directory();
+        tree.add("a", FILE);
+        tree.add("a/b", FILE);
+
+        assertEquals(Arrays.asList("a", "a/"), entries(tree, "/"));
+        assertEquals(Collections.singletonList("b"), entries(tree, "/a"));
+    }
+
+    public void testOneOffListingIsNotFlat() throws IOException
+    {
+        s3.put("dir/a/b", new byte[1]);
+        s3.put("dir/c", new byte[1]);
+
+        // found by a listing, but nothing says a traversal is going down the tree
+        Path dir = child(fileSystem.getPath("/"), "dir");
+        int before = s3.requests("ListObjectsV2");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            assertFalse(stream instanceof FlatListing.Stream);
+            assertEquals(Arrays.asList("a", "c"), names(stream));
+        }
+        assertEquals(before + 1, s3.requests("ListObjectsV2"));
+    }
+
+    public void testDescendingTraversalListsFlat() throws IOException
+    {
+        s3.put("top/small/a", new byte[1]);
+        s3.put("top/small/b/c", new byte[1]);
+
+        Path small = child(child(fileSystem.getPath("/"), "top"), "small");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(small)) {
+            assertTrue(stream instanceof FlatListing.Stream);
+            assertEquals(Arrays.asList("a", "b"), names(stream));
+        }
+    }
+
+    public void testLargeSubtreeIsListedLevelByLevel() throws IOException
+    {
+        for (int i = 0; i < 6; i++) {
+            s3.put("top/big/" + i + "/x", new byte[1]);
+        }
+        s3.put("top/small/a", new byte[1]);
+        s3.put("top/small/b/c", new byte[1]);
+
+        Path big = child(child(fileSystem.getPath("/"), "top"), "big");
+        List<Path> children = new ArrayList<>();
+        int before = s3.requests("ListObjectsV2");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(big)) {
+            assertFalse(stream instanceof FlatListing.Stream);
+            stream.forEach(children::add);
+        }
+        // the flat listing that gave up, then the level
+        assertEquals(6, children.size());
+        assertEquals(before + 2, s3.requests("ListObjectsV2"));
+
+        // further down nothing tries to list flat again, one page each
+        for (Path child : children) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(child)) {
+                assertFalse(stream instanceof FlatListing.Stream);
+                assertEquals(Collections.singletonList("x"), names(stream));
+            }
+        }
+        assertEquals(before + 2 + 6, s3.requests("ListObjectsV2"));
+
+        try (Stream<Path> walk = Files.walk(fileSystem.getPath("/"))) {
+            assertEquals(8, walk.filter(Files::isRegularFile).count());
+        }
+    }
+
+    /**
+     * The entries of the listed directory at {@code path}, directories with a trailing slash.
+     */
+    private List<String> entries(FlatListing.Directory tree, String path) throws IOException
+    {
+        Path dir = fileSystem.getPath("/");
+        for (Path name : fileSystem.getPath(path)) {
+            dir = child(dir, tree, name.toString());
+            tree = ((S3Path) dir).getListing();
+        }
+
+        List<String> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = new FlatListing.Stream((S3Path) dir, tree, null)) {
+            for (Path entry : stream) {
+                boolean directory = ((S3Path) entry).getAttributes().isDirectory();
+                entries.add(entry.getFileName() + (directory ? "/" : ""));
+            }
+        }
+        return entries;
+    }
+
+    private static Path child(Path dir, FlatListing.Directory tree, String name) throws IOException
+    {
+        try (DirectoryStream<Path> stream = new FlatListing.Stream((S3Path) dir, tree, null)) {
+            for (Path entry : stream) {
+                if (entry.getFileName().toString().equals(name) && ((S3Path) entry).getListing() != null)
+                    return entry;
+            }
+        }
+        throw new AssertionError("no directory " + name + " in " + dir);
+    }
+
+    /**
+     * {@code dir}'s subdirectory {@code name} as a listing returns it.
+     */
+    private static Path child(Path dir, String name) throws IOException
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                if (entry.getFileName().toString().equals(name))
+                    return entry;
+            }
+        }
+        throw new AssertionError("no " + name + " in " + dir);
+    }
+
+    private static List<String> names(DirectoryStream<Path> stream)
+    {
+        List<String> names = new ArrayList<>();
+        for (Path entry : stream) {
+            names.add(entry.getFileName().toString());
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
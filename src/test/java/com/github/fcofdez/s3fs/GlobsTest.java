@@ -0,0 +1,58 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.util.regex.Pattern;
+
+public class GlobsTest extends TestCase
+{
+    private static boolean matches(String glob, String name)
+    {
+        return Pattern.matches(Globs.toRegex(glob), name);
+    }
+
+    public void testWildcards()
+    {
+        assertTrue(matches("logs/2026-10-*/part-*.gz", "logs/2026-10-01/part-0001.gz"));
+        assertFalse(matches("logs/2026-10-*/part-*.gz", "logs/2026-10-01/nested/part-0001.gz"));
+        assertFalse(matches("logs/2026-10-*/part-*.gz", "logs/2026-10-01/part-0001.gzip"));
+        assertTrue(matches("logs/**.gz", "logs/2026-10-01/nested/part-0001.gz"));
+        assertTrue(matches("part-?.gz", "part-1.gz"));
+        assertFalse(matches("part-?.gz", "part-10.gz"));
+        assertFalse(matches("a?b", "a/b"));
+    }
+
+    public void testClassesAndGroups()
+    {
+        assertTrue(matches("part-[0-9].gz", "part-7.gz"));
+        assertFalse(matches("part-[!0-9].gz", "part-7.gz"));
+        assertTrue(matches("part-[!0-9].gz", "part-x.gz"));
+        assertTrue(matches("*.{gz,zst}", "part.zst"));
+        assertFalse(matches("*.{gz,zst}", "part.bz2"));
+        assertTrue(matches("a.b(c)+", "a.b(c)+"));
+        assertFalse(matches("a.b", "axb"));
+        assertTrue(matches("\\*", "*"));
+    }
+
+    public void testInvalidGlobs()
+    {
+        for (String glob : new String[]{"part-[0-9", "{a,b", "{a,{b}}", "a\\"}) {
+            try {
+                Globs.toRegex(glob);
+                fail(glob);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testLiteralPrefix()
+    {
+        assertEquals("logs/2026-10-", Globs.literalPrefix("logs/2026-10-*/part-*.gz"));
+        assertEquals("", Globs.literalPrefix("*.gz"));
+        assertEquals("a*b", Globs.literalPrefix("a\\*b?"));
+        assertEquals("part-", Globs.literalPrefix("part-{1,2}"));
+        assertTrue(Globs.isLiteral("logs/a\\*b"));
+        assertFalse(Globs.isLiteral("logs/*"));
+    }
+}
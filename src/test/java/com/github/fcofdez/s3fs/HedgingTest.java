@@ -0,0 +1,365 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class HedgingTest extends TestCase
+{
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<String> discarded = new ArrayList<>();
+    private S3Metrics metrics;
+    private Hedging hedging;
+
+    @Override
+    protected void setUp()
+    {
+        metrics = new S3Metrics(null, new MetadataCache(1000, 10));
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        if (hedging != null)
+            hedging.close();
+    }
+
+    public void testNothingHedgedBeforeEnoughSamples() throws Exception
+    {
+        hedging = hedging(100);
+        SlowRequests slow = new SlowRequests();
+        CompletableFuture<String> result = hedging.submit(slow, discarded::add);
+
+        scheduler.advance(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(-1, hedging.delayNanos());
+        assertEquals(1, slow.attempts.size());
+        assertEquals(0, metrics.getHedgedRequestCount());
+
+        slow.attempts.get(0).complete("primary");
+        assertEquals("primary", result.getNow(null));
+    }
+
+    public void testSlowRequestIsHedged() throws Exception
+    {
+        hedging = hedging(100);
+        warmUp();
+        long delay = hedging.delayNanos();
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), delay);
+
+        SlowRequests slow = new SlowRequests();
+        slow.respondFrom = 1;
+        CompletableFuture<String> result = hedging.submit(slow, discarded::add);
+        scheduler.advance(delay - 1);
+        assertEquals(1, slow.attempts.size());
+
+        scheduler.advance(1);
+        assertEquals("attempt 1", result.getNow(null));
+        assertEquals(2, slow.attempts.size());
+        assertTrue(slow.attempts.get(0).isCancelled());
+        assertEquals(1, metrics.getHedgedRequestCount());
+        assertEquals(1, metrics.getHedgeWinCount());
+    }
+
+    public void testResponseInTimeIsNotHedged() throws Exception
+    {
+        hedging = hedging(100);
+        warmUp();
+
+        SlowRequests slow = new SlowRequests();
+        CompletableFuture<String> result = hedging.submit(slow, discarded::add);
+        scheduler.advance(hedging.delayNanos() - 1);
+        slow.attempts.get(0).complete("primary");
+        // the timer went with the response
+        assertEquals(0, scheduler.pending());
+
+        scheduler.advance(TimeUnit.SECONDS.toNanos(1));
+        assertEquals("primary", result.getNow(null));
+        assertEquals(1, slow.attempts.size());
+        assertEquals(0, metrics.getHedgedRequestCount());
+    }
+
+    public void testLoserIsDiscarded() throws Exception
+    {
+        hedging = hedging(100);
+        warmUp();
+
+        SlowRequests slow = new SlowRequests();
+        slow.uncancellable = true;
+        CompletableFuture<String> result = hedging.submit(slow, discarded::add);
+        scheduler.advance(hedging.delayNanos());
+        assertEquals(2, slow.attempts.size());
+
+        // both finish, the primary too late to win
+        slow.attempts.get(1).complete("duplicate");
+        slow.attempts.get(0).complete("primary");
+        assertEquals("duplicate", result.getNow(null));
+        assertEquals(1, discarded.size());
+        assertEquals("primary", discarded.get(0));
+    }
+
+    public void testBudgetLimitsDuplicates() throws Exception
+    {
+        // 205 requests at 1% buy two duplicates
+        hedging = hedging(1);
+        warmUp();
+
+        for (int i = 0; i < 5; i++)
+            hedging.submit(new SlowRequests(), discarded::add);
+
+        scheduler.advance(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, metrics.getHedgedRequestCount());
+    }
+
+    public void testFailureWithoutHedgeFails() throws Exception
+    {
+        hedging = hedging(100);
+        SlowRequests slow = new SlowRequests();
+        CompletableFuture<String> result = hedging.submit(slow, discarded::add);
+        slow.attempts.get(0).completeExceptionally(new IllegalStateException("boom"));
+
+        try {
+            result.getNow(null);
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testPrimaryFailureWaitsForDuplicate() throws Exception
+    {
+        hedging = hedging(100);
+        warmUp();
+
+        SlowRequests slow = new SlowRequests();
+        CompletableFuture<String> result = hedging.submit(slow, discarded::add);
+        scheduler.advance(hedging.delayNanos());
+        assertEquals(2, slow.attempts.size());
+        slow.attempts.get(0).completeExceptionally(new IllegalStateException("boom"));
+        assertFalse(result.isDone());
+
+        slow.attempts.get(1).complete("duplicate");
+        assertEquals("duplicate", result.getNow(null));
+    }
+
+    public void testCancellingResultCancelsAttempts() throws Exception
+    {
+        hedging = hedging(100);
+        warmUp();
+
+        SlowRequests slow = new SlowRequests();
+        CompletableFuture<String> result = hedging.submit(slow, discarded::add);
+        scheduler.advance(hedging.delayNanos());
+        assertEquals(2, slow.attempts.size());
+        result.cancel(true);
+        assertTrue(slow.attempts.get(0).isCancelled());
+        assertTrue(slow.attempts.get(1).isCancelled());
+    }
+
+    public void testResponseTimesComeFromTheClock() throws Exception
+    {
+        hedging = hedging(100);
+        for (int i = 0; i < Hedging.MIN_SAMPLES; i++) {
+            SlowRequests slow = new SlowRequests();
+            hedging.submit(slow, discarded::add);
+            scheduler.advance(TimeUnit.MILLISECONDS.toNanos(20));
+            slow.respond(0);
+        }
+
+        long delay = hedging.delayNanos();
+        // within the histogram's precision
+        assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(19) && delay <= TimeUnit.MILLISECONDS.toNanos(21));
+    }
+
+    private Hedging hedging(int budgetPercent)
+    {
+        return new Hedging(budgetPercent, metrics, scheduler::now, scheduler);
+    }
+
+    /**
+     * Sees enough fast responses for a threshold to be computed, and issues as many requests that never get to be
+     * hedged to earn credit.
+     */
+    private void warmUp() throws Exception
+    {
+        for (int i = 0; i < 2 * Hedging.MIN_SAMPLES; i++) {
+            hedging.recordResponse(TimeUnit.MICROSECONDS.toNanos(100));
+            hedging.submit(attempt -> CompletableFuture.completedFuture("fast"), discarded::add).get();
+        }
+    }
+
+    private static final class Uncancellable extends CompletableFuture<String>
+    {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Sends every attempt, attempts from {@code respondFrom} on respond and complete at once, earlier ones only when
+     * told to.
+     */
+    private static final class SlowRequests implements Function<Hedging.Attempt, CompletableFuture<String>>
+    {
+        final List<CompletableFuture<String>> attempts = new ArrayList<>();
+        private final List<Hedging.Attempt> sent = new ArrayList<>();
+        int respondFrom = Integer.MAX_VALUE;
+        // like a request that already received its last byte when cancelled
+        boolean uncancellable;
+
+        @Override
+        public CompletableFuture<String> apply(Hedging.Attempt attempt)
+        {
+            int index = attempts.size();
+            attempt.sent();
+            CompletableFuture<String> future = uncancellable ? new Uncancellable() : new CompletableFuture<>();
+            attempts.add(future);
+            sent.add(attempt);
+            if (index >= respondFrom)
+                respond(index);
+            return future;
+        }
+
+        void respond(int index)
+        {
+            sent.get(index).responded();
+            attempts.get(index).complete("attempt " + index);
+        }
+    }
+
+    /**
+     * Runs scheduled tasks on the test's thread once {@link #advance(long)} has moved its clock past their delay.
+     */
+    private static final class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService
+    {
+        private final PriorityQueue<Task<?>> tasks = new PriorityQueue<>();
+        private long now;
+        private boolean shutdown;
+
+        long now()
+        {
+            return now;
+        }
+
+        void advance(long nanos)
+        {
+            long until = now + nanos;
+            while (!tasks.isEmpty() && tasks.peek().due <= until) {
+                Task<?> task = tasks.poll();
+                now = Math.max(now, task.due);
+                task.run();
+            }
+            now = until;
+        }
+
+        int pending()
+        {
+            tasks.removeIf(Task::isCancelled);
+            return tasks.size();
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+        {
+            return schedule(Executors.callable(command), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit)
+        {
+            if (shutdown)
+                throw new RejectedExecutionException();
+            Task<V> task = new Task<>(callable, now + unit.toNanos(delay));
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command)
+        {
+            schedule(command, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void shutdown()
+        {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            shutdown = true;
+            tasks.clear();
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+        {
+            return shutdown;
+        }
+
+        private final class Task<V> extends FutureTask<V> implements ScheduledFuture<V>
+        {
+            final long due;
+
+            Task(Callable<V> callable, long due)
+            {
+                super(callable);
+                this.due = due;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit)
+            {
+                return unit.convert(due - now, TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other)
+            {
+                return Long.compare(due, ((Task<?>) other).due);
+            }
+        }
+    }
+}
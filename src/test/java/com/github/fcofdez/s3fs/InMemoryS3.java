@@ -0,0 +1,686 @@
+package com.github.fcofdez.s3fs;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CopyObjectResult;
+import software.amazon.awssdk.services.s3.model.CopyPartResult;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A bucket held in memory behind the sync and async client interfaces, for filesystems under test. Async requests
+ * complete on a thread of their own, named {@value #EVENT_LOOP}, like the SDK's event loop.
+ */
+final class InMemoryS3 implements S3Client
+{
+    static final String BUCKET = "bucket";
+    static final String EVENT_LOOP = "in-memory-s3-event-loop";
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private volatile GetObjectRequest lastGet;
+    // upload id -> part number -> bytes
+    private final Map<String, SortedMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private volatile int failingPart;
+    private volatile boolean failingAbort;
+    private volatile boolean failingDeletes;
+    private volatile CountDownLatch heldGets;
+    private volatile CountDownLatch heldLists;
+    private volatile int pageSize = 1000;
+    private volatile int droppedStreamAt = -1;
+    private final Set<String> undeletable = ConcurrentHashMap.newKeySet();
+    private final Async async = new Async();
+    private final ExecutorService eventLoop = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, EVENT_LOOP);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A filesystem of {@link #BUCKET} on these clients, closing it closes them.
+     */
+    S3FileSystem newFileSystem(S3FSSettings settings) throws IOException
+    {
+        S3Clients clients = S3Clients.of(Region.US_EAST_1, this, async);
+        return new S3FileSystem(new S3FileSystemProvider(), BUCKET, clients, settings);
+    }
+
+    void put(String key, byte[] data)
+    {
+        objects.put(key, data);
+    }
+
+    byte[] get(String key)
+    {
+        return objects.get(key);
+    }
+
+    GetObjectRequest lastGet()
+    {
+        return lastGet;
+    }
+
+    /**
+     * Multipart uploads neither completed nor aborted.
+     */
+    int pendingUploads()
+    {
+        return uploads.size();
+    }
+
+    /**
+     * Makes the upload or copy of part {@code partNumber} fail with a 500.
+     */
+    void failPart(int partNumber)
+    {
+        failingPart = partNumber;
+    }
+
+    /**
+     * Makes aborting a multipart upload fail with a 500.
+     */
+    void failAbort()
+    {
+        failingAbort = true;
+    }
+
+    /**
+     * Makes DeleteObjects refuse {@code key} with an AccessDenied error, deleting the rest of the batch.
+     */
+    void failDelete(String key)
+    {
+        undeletable.add(key);
+    }
+
+    /**
+     * Makes every DeleteObjects request fail with a 500.
+     */
+    void failDeleteObjects()
+    {
+        failingDeletes = true;
+    }
+
+    /**
+     * Keeps async GETs from being answered until {@link #releaseGets()}. A GET whose future was cancelled meanwhile
+     * is then aborted, as the SDK does, and counted as "GetObjectAborted" instead of "GetObject".
+     */
+    void holdGets()
+    {
+        heldGets = new CountDownLatch(1);
+    }
+
+    void releaseGets()
+    {
+        heldGets.countDown();
+    }
+
+    /**
+     * Keeps async listings from being answered until {@link #releaseLists()}. A listing whose future was cancelled
+     * meanwhile is counted as "ListObjectsV2Aborted" and never answered.
+     */
+    void holdLists()
+    {
+        heldLists = new CountDownLatch(1);
+    }
+
+    void releaseLists()
+    {
+        heldLists.countDown();
+    }
+
+    /**
+     * Makes the body of the next GET through the sync client fail after {@code bytes}, as when S3 closes a connection
+     * that sat idle.
+     */
+    void dropNextStream(int bytes)
+    {
+        droppedStreamAt = bytes;
+    }
+
+    /**
+     * Caps the pages of every listing at {@code pageSize} keys and common prefixes, as S3 does at a thousand.
+     */
+    void pageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    private static S3Exception internalError()
+    {
+        return S3Exception.builder().statusCode(500).message("We encountered an internal error").build();
+    }
+
+    /**
+     * How many {@code operation} requests were made, as in "GetObject".
+     */
+    int requests(String operation)
+    {
+        AtomicInteger count = requests.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    private void count(String operation)
+    {
+        requests.computeIfAbsent(operation, o -> new AtomicInteger()).incrementAndGet();
+    }
+
+    static String eTag(byte[] data)
+    {
+        return "\"" + Integer.toHexString(Arrays.hashCode(data)) + "\"";
+    }
+
+    private byte[] object(String bucket, String key)
+    {
+        byte[] data = BUCKET.equals(bucket) ? objects.get(key) : null;
+        if (data == null)
+            throw NoSuchKeyException.builder().statusCode(404).message("No such key " + key).build();
+        return data;
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request)
+    {
+        count("HeadObject");
+        byte[] data = object(request.bucket(), request.key());
+        return HeadObjectResponse.builder()
+                                 .contentLength((long) data.length)
+                                 .eTag(eTag(data))
+                                 .lastModified(Instant.EPOCH)
+                                 .build();
+    }
+
+    @Override
+    public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request)
+    {
+        count("ListObjectsV2");
+        return list(request);
+    }
+
+    /**
+     * A page of the keys under the prefix in order, those sharing a prefix up to the delimiter rolled up into one
+     * common prefix. The continuation token is the last key or common prefix of the previous page.
+     */
+    private ListObjectsV2Response list(ListObjectsV2Request request)
+    {
+        String prefix = request.prefix() == null ? "" : request.prefix();
+        String delimiter = request.delimiter();
+        String after = request.continuationToken() != null ? request.continuationToken() : request.startAfter();
+        int maxKeys = request.maxKeys() == null ? pageSize : Math.min(pageSize, request.maxKeys());
+
+        List<S3Object> contents = new ArrayList<>();
+        List<CommonPrefix> commonPrefixes = new ArrayList<>();
+        String last = null;
+        boolean truncated = false;
+        SortedMap<String, byte[]> keys = BUCKET.equals(request.bucket()) ? new TreeMap<>(objects) : new TreeMap<>();
+        for (Map.Entry<String, byte[]> entry : keys.tailMap(prefix).entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix))
+                break;
+            int end = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            String name = end < 0 ? key : key.substring(0, end + delimiter.length());
+            if (name.equals(last) || (after != null && name.compareTo(after) <= 0))
+                continue;
+            if (contents.size() + commonPrefixes.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+
+            if (end < 0) {
+                contents.add(S3Object.builder()
+                                     .key(key)
+                                     .size((long) entry.getValue().length)
+                                     .eTag(eTag(entry.getValue()))
+                                     .lastModified(Instant.EPOCH)
+                                     .build());
+            } else {
+                commonPrefixes.add(CommonPrefix.builder().prefix(name).build());
+            }
+            last = name;
+        }
+        return ListObjectsV2Response.builder()
+                                    .prefix(prefix)
+                                    .contents(contents)
+                                    .commonPrefixes(commonPrefixes)
+                                    .keyCount(contents.size() + commonPrefixes.size())
+                                    .isTruncated(truncated)
+                                    .nextContinuationToken(truncated ? last : null)
+                                    .build();
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request)
+    {
+        count("DeleteObject");
+        if (BUCKET.equals(request.bucket()))
+            objects.remove(request.key());
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request)
+    {
+        Get get = new Get(request);
+        InputStream body = new ByteArrayInputStream(get.data, get.start, get.end - get.start);
+        int dropAt = droppedStreamAt;
+        if (dropAt >= 0) {
+            droppedStreamAt = -1;
+            body = new DroppedStream(body, dropAt);
+        }
+        return new ResponseInputStream<>(get.response, AbortableInputStream.create(body));
+    }
+
+    @Override
+    public String serviceName()
+    {
+        return "s3";
+    }
+
+    @Override
+    public void close()
+    {
+        eventLoop.shutdownNow();
+    }
+
+    /**
+     * A ranged GET answered the way S3 does: 404 for a missing key, 412 when {@code If-Match} names another version,
+     * 416 from past the end, and the range trimmed to the object otherwise.
+     */
+    private final class Get
+    {
+        final byte[] data;
+        final int start;
+        final int end;
+        final GetObjectResponse response;
+
+        Get(GetObjectRequest request)
+        {
+            count("GetObject");
+            lastGet = request;
+            data = object(request.bucket(), request.key());
+            if (request.ifMatch() != null && !request.ifMatch().equals(eTag(data)))
+                throw S3Exception.builder().statusCode(412).message("Precondition failed").build();
+
+            if (request.range() == null) {
+                start = 0;
+                end = data.length;
+            } else {
+                String[] bounds = request.range().substring("bytes=".length()).split("-", -1);
+                start = Integer.parseInt(bounds[0]);
+                if (start >= data.length)
+                    throw S3Exception.builder().statusCode(416).message("Range not satisfiable").build();
+                end = bounds[1].isEmpty() ? data.length : (int) Math.min(data.length, Long.parseLong(bounds[1]) + 1);
+            }
+            response = GetObjectResponse.builder()
+                                        .contentLength((long) end - start)
+                                        .contentRange("bytes " + start + "-" + (end - 1) + "/" + data.length)
+                                        .eTag(eTag(data))
+                                        .lastModified(Instant.EPOCH)
+                                        .build();
+        }
+    }
+
+    private final class Async implements S3AsyncClient
+    {
+        @Override
+        public <T> CompletableFuture<T> getObject(GetObjectRequest request,
+                                                  AsyncResponseTransformer<GetObjectResponse, T> transformer)
+        {
+            // counted as it's sent, "GetObject" only counts it once it's answered
+            count("AsyncGetObject");
+            CompletableFuture<T> result = transformer.prepare();
+            CountDownLatch held = heldGets;
+            eventLoop.execute(() -> {
+                try {
+                    if (held != null)
+                        held.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (result.isCancelled()) {
+                    count("GetObjectAborted");
+                    return;
+                }
+                Get get;
+                try {
+                    get = new Get(request);
+                } catch (S3Exception e) {
+                    transformer.exceptionOccurred(e);
+                    return;
+                }
+                transformer.onResponse(get.response);
+                transformer.onStream(new SingleBuffer(ByteBuffer.wrap(get.data, get.start, get.end - get.start).slice()));
+            });
+            return result;
+        }
+
+        @Override
+        public CompletableFuture<PutObjectResponse> putObject(PutObjectRequest request, AsyncRequestBody body)
+        {
+            return respond("PutObject", () -> {
+                byte[] data = drain(body);
+                objects.put(request.key(), data);
+                return PutObjectResponse.builder().eTag(eTag(data)).build();
+            });
+        }
+
+        @Override
+        public CompletableFuture<CreateMultipartUploadResponse> createMultipartUpload(CreateMultipartUploadRequest request)
+        {
+            return respond("CreateMultipartUpload", () -> {
+                String uploadId = "upload-" + uploadIds.incrementAndGet();
+                uploads.put(uploadId, new ConcurrentSkipListMap<>());
+                return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+            });
+        }
+
+        @Override
+        public CompletableFuture<UploadPartResponse> uploadPart(UploadPartRequest request, AsyncRequestBody body)
+        {
+            return respond("UploadPart", () -> {
+                if (request.partNumber() == failingPart)
+                    throw internalError();
+                byte[] data = drain(body);
+                upload(request.uploadId()).put(request.partNumber(), data);
+                return UploadPartResponse.builder().eTag(eTag(data)).build();
+            });
+        }
+
+        @Override
+        public CompletableFuture<ListObjectsV2Response> listObjectsV2(ListObjectsV2Request request)
+        {
+            // counted as it's sent, pages asked for ahead of time included
+            count("ListObjectsV2");
+            CompletableFuture<ListObjectsV2Response> result = new CompletableFuture<>();
+            CountDownLatch held = heldLists;
+            eventLoop.execute(() -> {
+                try {
+                    if (held != null)
+                        held.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (result.isCancelled()) {
+                    count("ListObjectsV2Aborted");
+                    return;
+                }
+                try {
+                    result.complete(list(request));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result;
+        }
+
+        @Override
+        public CompletableFuture<DeleteObjectsResponse> deleteObjects(DeleteObjectsRequest request)
+        {
+            return respond("DeleteObjects", () -> {
+                if (failingDeletes)
+                    throw internalError();
+                List<S3Error> errors = new ArrayList<>();
+                for (ObjectIdentifier object : request.delete().objects()) {
+                    if (undeletable.contains(object.key())) {
+                        errors.add(S3Error.builder().key(object.key()).code("AccessDenied").message("Access Denied").build());
+                    } else if (BUCKET.equals(request.bucket())) {
+                        objects.remove(object.key());
+                    }
+                }
+                // quiet mode, only the failures are listed
+                return DeleteObjectsResponse.builder().deleted(new ArrayList<>()).errors(errors).build();
+            });
+        }
+
+        @Override
+        public CompletableFuture<UploadPartCopyResponse> uploadPartCopy(UploadPartCopyRequest request)
+        {
+            return respond("UploadPartCopy", () -> {
+                if (request.partNumber() == failingPart)
+                    throw internalError();
+                byte[] source = copySource(request.copySource(), request.copySourceIfMatch());
+                String[] bounds = request.copySourceRange().substring("bytes=".length()).split("-");
+                byte[] data = Arrays.copyOfRange(source, Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]) + 1);
+                upload(request.uploadId()).put(request.partNumber(), data);
+                return UploadPartCopyResponse.builder()
+                                             .copyPartResult(CopyPartResult.builder().eTag(eTag(data)).build())
+                                             .build();
+            });
+        }
+
+        @Override
+        public CompletableFuture<CopyObjectResponse> copyObject(CopyObjectRequest request)
+        {
+            return respond("CopyObject", () -> {
+                byte[] data = copySource(request.copySource(), request.copySourceIfMatch());
+                objects.put(request.key(), data);
+                return CopyObjectResponse.builder()
+                                         .copyObjectResult(CopyObjectResult.builder().eTag(eTag(data)).build())
+                                         .build();
+            });
+        }
+
+        private byte[] copySource(String copySource, String ifMatch)
+        {
+            int slash = copySource.indexOf('/');
+            byte[] data = object(copySource.substring(0, slash), copySource.substring(slash + 1));
+            if (ifMatch != null && !ifMatch.equals(eTag(data)))
+                throw S3Exception.builder().statusCode(412).message("Precondition failed").build();
+            return data;
+        }
+
+        @Override
+        public CompletableFuture<CompleteMultipartUploadResponse> completeMultipartUpload(CompleteMultipartUploadRequest request)
+        {
+            return respond("CompleteMultipartUpload", () -> {
+                SortedMap<Integer, byte[]> parts = upload(request.uploadId());
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                for (CompletedPart part : request.multipartUpload().parts()) {
+                    byte[] bytes = parts.get(part.partNumber());
+                    if (bytes == null || !eTag(bytes).equals(part.eTag()))
+                        throw S3Exception.builder().statusCode(400).message("Invalid part").build();
+                    data.write(bytes, 0, bytes.length);
+                }
+                uploads.remove(request.uploadId());
+                objects.put(request.key(), data.toByteArray());
+                return CompleteMultipartUploadResponse.builder().eTag(eTag(data.toByteArray())).build();
+            });
+        }
+
+        @Override
+        public CompletableFuture<AbortMultipartUploadResponse> abortMultipartUpload(AbortMultipartUploadRequest request)
+        {
+            return respond("AbortMultipartUpload", () -> {
+                if (failingAbort)
+                    throw internalError();
+                upload(request.uploadId());
+                uploads.remove(request.uploadId());
+                return AbortMultipartUploadResponse.builder().build();
+            });
+        }
+
+        private SortedMap<Integer, byte[]> upload(String uploadId)
+        {
+            SortedMap<Integer, byte[]> parts = uploads.get(uploadId);
+            if (parts == null)
+                throw S3Exception.builder().statusCode(404).message("No such upload " + uploadId).build();
+            return parts;
+        }
+
+        private <T> CompletableFuture<T> respond(String operation, Supplier<T> response)
+        {
+            count(operation);
+            return CompletableFuture.supplyAsync(response, eventLoop);
+        }
+
+        @Override
+        public String serviceName()
+        {
+            return "s3";
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    private static byte[] drain(AsyncRequestBody body)
+    {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        body.subscribe(new Subscriber<ByteBuffer>()
+        {
+            @Override
+            public void onSubscribe(Subscription subscription)
+            {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer)
+            {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                data.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void onError(Throwable error)
+            {
+                throw new IllegalStateException(error);
+            }
+
+            @Override
+            public void onComplete()
+            {
+            }
+        });
+        return data.toByteArray();
+    }
+
+    private static final class DroppedStream extends FilterInputStream
+    {
+        private int remaining;
+
+        DroppedStream(InputStream in, int remaining)
+        {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining == 0)
+                throw new IOException("Connection reset");
+            int read = super.read(b, off, Math.min(len, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+    }
+
+    private static final class SingleBuffer implements SdkPublisher<ByteBuffer>
+    {
+        private final ByteBuffer body;
+
+        SingleBuffer(ByteBuffer body)
+        {
+            this.body = body;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ByteBuffer> subscriber)
+        {
+            subscriber.onSubscribe(new Subscription()
+            {
+                private boolean done;
+
+                @Override
+                public void request(long n)
+                {
+                    if (done)
+                        return;
+                    done = true;
+                    subscriber.onNext(body);
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel()
+                {
+                    done = true;
+                }
+            });
+        }
+    }
+}
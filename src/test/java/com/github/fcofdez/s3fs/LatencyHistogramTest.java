@@ -0,0 +1,46 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest extends TestCase
+{
+    public void testBucketsCoverEveryDuration()
+    {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = LatencyHistogram.bucket(micros);
+            assertTrue(micros < LatencyHistogram.upperBound(bucket));
+            assertTrue(bucket == 0 || micros >= LatencyHistogram.upperBound(bucket - 1));
+        }
+        assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.bucket(1L << 50));
+    }
+
+    public void testPercentilesWithinBucketPrecision()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(99));
+
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMeanMillis(), 1e-9);
+
+        double p50 = histogram.getPercentileMillis(50);
+        double p99 = histogram.getPercentileMillis(99);
+        assertTrue("p50 " + p50, p50 > 50 && p50 <= 50 * 1.25);
+        assertTrue("p99 " + p99, p99 > 99 && p99 <= 99 * 1.25);
+        assertTrue(histogram.getPercentileMillis(100) >= 100);
+    }
+
+    public void testRejectsInvalidPercentile()
+    {
+        try {
+            new LatencyHistogram().getPercentileNanos(101);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MetadataCacheTest extends TestCase
+{
+    private final AtomicLong now = new AtomicLong();
+
+    public void testEntriesExpire()
+    {
+        MetadataCache cache = new MetadataCache(1000, 10, now::get);
+        S3ObjectMetadata metadata = metadata(42);
+        cache.put("bucket", "key", metadata);
+        assertSame(metadata, cache.get("bucket", "key"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertSame(metadata, cache.get("bucket", "key"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertNull(cache.get("bucket", "key"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testOldestEntriesMakeRoom()
+    {
+        MetadataCache cache = new MetadataCache(1000, 2, now::get);
+        cache.put("bucket", "a", metadata(1));
+        cache.put("bucket", "b", metadata(2));
+        // learning "a" again makes it the newest
+        cache.put("bucket", "a", metadata(3));
+        cache.put("bucket", "c", metadata(4));
+
+        assertNull(cache.get("bucket", "b"));
+        assertEquals(3, cache.get("bucket", "a").size());
+        assertEquals(4, cache.get("bucket", "c").size());
+    }
+
+    public void testZeroCapacityCachesNothing()
+    {
+        MetadataCache cache = new MetadataCache(1000, 0, now::get);
+        cache.put("bucket", "key", metadata(1));
+        assertNull(cache.get("bucket", "key"));
+    }
+
+    private static S3ObjectMetadata metadata(long size)
+    {
+        return new S3ObjectMetadata(size, "\"etag\"", Instant.EPOCH, null);
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+public class RangeFetcherTest extends TestCase
+{
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        s3.put("key", new byte[100_000]);
+        fileSystem = s3.newFileSystem(S3FSSettings.builder().createS3FSSettings());
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testCancelledFetchAbortsGet() throws Exception
+    {
+        RangeFetcher fetcher = new RangeFetcher(fileSystem, InMemoryS3.BUCKET, "key");
+        s3.holdGets();
+        CompletableFuture<ByteBuffer> range = fetcher.fetch(0, 4096);
+        range.cancel(true);
+        // back in the pool without waiting for the GET
+        assertEquals(0, fileSystem.getBufferPool().getUsedBytes());
+
+        s3.releaseGets();
+        // answered after the first one, which by then has been dealt with
+        fetcher.fetchInto(0, ByteBuffer.allocate(10)).get();
+        assertEquals(1, s3.requests("GetObjectAborted"));
+        assertEquals(1, s3.requests("GetObject"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+public class ReadaheadTest extends TestCase
+{
+    public void testWindowGrowsOnSequentialFetches()
+    {
+        Readahead readahead = new Readahead(100, 350);
+        assertEquals(100, readahead.nextWindow(0));
+        readahead.onFetch(0, 100);
+
+        assertEquals(200, readahead.nextWindow(100));
+        readahead.onFetch(100, 200);
+        // capped
+        assertEquals(350, readahead.nextWindow(300));
+        readahead.onFetch(300, 350);
+        assertEquals(350, readahead.nextWindow(650));
+    }
+
+    public void testShortGapStillCountsAsSequential()
+    {
+        Readahead readahead = new Readahead(100, 1000);
+        readahead.nextWindow(0);
+        readahead.onFetch(0, 100);
+
+        assertTrue(readahead.isSequential(150));
+        assertEquals(200, readahead.nextWindow(150));
+    }
+
+    public void testWindowResetsOnRandomAccess()
+    {
+        Readahead readahead = new Readahead(100, 1000);
+        readahead.nextWindow(0);
+        readahead.onFetch(0, 100);
+        assertEquals(200, readahead.nextWindow(100));
+        readahead.onFetch(100, 200);
+
+        // backwards, then too far forward
+        assertEquals(100, readahead.nextWindow(50));
+        readahead.onFetch(50, 100);
+        assertEquals(100, readahead.nextWindow(10_000));
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class S3AsynchronousFileChannelTest extends TestCase
+{
+    private final byte[] data = new byte[10_000];
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+    private Path path;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        new Random(42).nextBytes(data);
+        s3 = new InMemoryS3();
+        s3.put("data.bin", data);
+        fileSystem = s3.newFileSystem(S3FSSettings.builder().createS3FSSettings());
+        path = fileSystem.getPath("/data.bin");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testHandlerDoesNotRunOnClientThread() throws Exception
+    {
+        try (AsynchronousFileChannel channel = open(null)) {
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            Completion completion = new Completion();
+            channel.read(dst, 1000, null, completion);
+
+            assertEquals(100, (int) completion.result.get(5, TimeUnit.SECONDS));
+            assertEquals("s3fs-completion", completion.thread);
+            assertEquals(ByteBuffer.wrap(data, 1000, 100), (ByteBuffer) dst.flip());
+        }
+    }
+
+    public void testHandlerRunsOnGivenExecutor() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "caller-executor"));
+        try (AsynchronousFileChannel channel = open(executor)) {
+            Completion completion = new Completion();
+            channel.read(ByteBuffer.allocate(100), 0, null, completion);
+
+            assertEquals(100, (int) completion.result.get(5, TimeUnit.SECONDS));
+            assertEquals("caller-executor", completion.thread);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testReadsUpToEndOfObject() throws Exception
+    {
+        try (AsynchronousFileChannel channel = open(null)) {
+            // the size is unknown until a response tells it, S3 trims the range
+            ByteBuffer dst = ByteBuffer.allocate(200);
+            assertEquals(100, (int) channel.read(dst, data.length - 100).get(5, TimeUnit.SECONDS));
+            assertEquals(ByteBuffer.wrap(data, data.length - 100, 100), (ByteBuffer) dst.flip());
+            assertEquals(data.length, channel.size());
+        }
+    }
+
+    public void testReadPastEndReturnsMinusOne() throws Exception
+    {
+        try (AsynchronousFileChannel channel = open(null)) {
+            // answered with a 416 while the size is unknown, from the metadata once it is
+            assertEquals(-1, (int) channel.read(ByteBuffer.allocate(10), data.length).get(5, TimeUnit.SECONDS));
+            assertEquals(1, (int) channel.read(ByteBuffer.allocate(10), data.length - 1).get(5, TimeUnit.SECONDS));
+            assertEquals(-1, (int) channel.read(ByteBuffer.allocate(10), data.length + 10).get(5, TimeUnit.SECONDS));
+            assertEquals(2, s3.requests("GetObject"));
+        }
+    }
+
+    public void testStaleCachedVersionIsReplacedBeforeAnyRead() throws Exception
+    {
+        fileSystem.getMetadataCache().put(InMemoryS3.BUCKET, "data.bin",
+                                          new S3ObjectMetadata(data.length, "\"stale\"", Instant.EPOCH, null));
+        try (AsynchronousFileChannel channel = open(null)) {
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            assertEquals(100, (int) channel.read(dst, 0).get(5, TimeUnit.SECONDS));
+            assertEquals(ByteBuffer.wrap(data, 0, 100), (ByteBuffer) dst.flip());
+            assertEquals(2, s3.requests("GetObject"));
+
+            // pinned to the version the restarted read found
+            channel.read(ByteBuffer.allocate(100), 100).get(5, TimeUnit.SECONDS);
+            assertEquals(InMemoryS3.eTag(data), s3.lastGet().ifMatch());
+        }
+    }
+
+    public void testReplacedWhileReadingFails() throws Exception
+    {
+        try (AsynchronousFileChannel channel = open(null)) {
+            channel.read(ByteBuffer.allocate(100), 0).get(5, TimeUnit.SECONDS);
+            s3.put("data.bin", new byte[data.length]);
+
+            try {
+                channel.read(ByteBuffer.allocate(100), 100).get(5, TimeUnit.SECONDS);
+                fail("bytes of two versions must not be mixed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            assertNull(fileSystem.getMetadataCache().get(InMemoryS3.BUCKET, "data.bin"));
+        }
+    }
+
+    public void testMissingObjectIsNoSuchFile() throws Exception
+    {
+        path = fileSystem.getPath("/missing");
+        try (AsynchronousFileChannel channel = open(null)) {
+            Completion completion = new Completion();
+            channel.read(ByteBuffer.allocate(100), 0, null, completion);
+            try {
+                completion.result.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof NoSuchFileException);
+            }
+        }
+    }
+
+    public void testCancelledReadAbortsGet() throws Exception
+    {
+        try (AsynchronousFileChannel channel = open(null)) {
+            s3.holdGets();
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            channel.read(dst, 0).cancel(true);
+
+            s3.releaseGets();
+            // answered after the first one, which by then has been dealt with
+            assertEquals(Integer.valueOf(10), channel.read(ByteBuffer.allocate(10), 0).get(5, TimeUnit.SECONDS));
+            assertEquals(1, s3.requests("GetObjectAborted"));
+            assertEquals(1, s3.requests("GetObject"));
+            assertEquals(0, dst.position());
+            assertEquals(ByteBuffer.allocate(100), dst);
+        }
+    }
+
+    private AsynchronousFileChannel open(ExecutorService executor) throws IOException
+    {
+        return fileSystem.provider().newAsynchronousFileChannel(path, Collections.singleton(StandardOpenOption.READ),
+                                                                executor);
+    }
+
+    private static final class Completion implements CompletionHandler<Integer, Void>
+    {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        volatile String thread;
+
+        @Override
+        public void completed(Integer bytesRead, Void attachment)
+        {
+            thread = Thread.currentThread().getName();
+            result.complete(bytesRead);
+        }
+
+        @Override
+        public void failed(Throwable error, Void attachment)
+        {
+            thread = Thread.currentThread().getName();
+            result.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+
+public class S3ClientsTest extends TestCase
+{
+    private static final AwsCredentialsProvider CREDENTIALS =
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("access", "secret"));
+
+    private final S3Clients.Registry registry = new S3Clients.Registry();
+
+    public void testSameRegionAndCredentialsShareClients()
+    {
+        S3Clients first = registry.acquire(Region.US_EAST_1, "access:secret", CREDENTIALS);
+        S3Clients second = registry.acquire(Region.US_EAST_1, "access:secret", CREDENTIALS);
+        S3Clients otherRegion = registry.acquire(Region.EU_WEST_1, "access:secret", CREDENTIALS);
+        S3Clients otherCredentials = registry.acquire(Region.US_EAST_1, "access:rotated", CREDENTIALS);
+
+        assertSame(first, second);
+        assertFalse(first == otherRegion);
+        assertFalse(first == otherCredentials);
+
+        registry.release(first);
+        registry.release(second);
+        registry.release(otherRegion);
+        registry.release(otherCredentials);
+    }
+
+    public void testClientsLiveUntilLastRelease()
+    {
+        S3Clients first = registry.acquire(Region.US_EAST_1, "access:secret", CREDENTIALS);
+        S3Clients second = registry.acquire(Region.US_EAST_1, "access:secret", CREDENTIALS);
+
+        registry.release(first);
+        S3Clients third = registry.acquire(Region.US_EAST_1, "access:secret", CREDENTIALS);
+        assertSame(first, third);
+
+        registry.release(second);
+        registry.release(third);
+        // the last release closed them, whoever asks next gets new ones
+        S3Clients rebuilt = registry.acquire(Region.US_EAST_1, "access:secret", CREDENTIALS);
+        assertFalse(first == rebuilt);
+        registry.release(rebuilt);
+    }
+}
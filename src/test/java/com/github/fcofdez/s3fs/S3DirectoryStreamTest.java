@@ -0,0 +1,93 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class S3DirectoryStreamTest extends TestCase
+{
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        s3.pageSize(2);
+        fileSystem = s3.newFileSystem(S3FSSettings.builder().createS3FSSettings());
+
+        // three pages: a b, c/ d, e/ f
+        for (String key : Arrays.asList("dir/a", "dir/b", "dir/c/x", "dir/d", "dir/e/y", "dir/f")) {
+            s3.put(key, new byte[1]);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testPagesHoldKeysAndCommonPrefixes() throws IOException
+    {
+        List<String> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fileSystem.getPath("/dir"))) {
+            for (Path entry : stream) {
+                boolean directory = ((S3Path) entry).getAttributes().isDirectory();
+                entries.add(entry.getFileName() + (directory ? "/" : ""));
+            }
+        }
+        // a page's keys come before its common prefixes
+        assertEquals(Arrays.asList("a", "b", "d", "c/", "f", "e/"), entries);
+        assertEquals(3, s3.requests("ListObjectsV2"));
+    }
+
+    public void testPagesAreRequestedAsIterationAdvances() throws IOException
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fileSystem.getPath("/dir"))) {
+            assertEquals(0, s3.requests("ListObjectsV2"));
+            Iterator<Path> entries = stream.iterator();
+            assertEquals(1, s3.requests("ListObjectsV2"));
+
+            // taking the first page asks for the second
+            assertEquals("a", entries.next().getFileName().toString());
+            assertEquals("b", entries.next().getFileName().toString());
+            assertEquals(2, s3.requests("ListObjectsV2"));
+
+            // and the second for the third, the last
+            assertEquals("d", entries.next().getFileName().toString());
+            assertEquals(3, s3.requests("ListObjectsV2"));
+            while (entries.hasNext()) {
+                entries.next();
+            }
+            assertEquals(3, s3.requests("ListObjectsV2"));
+        }
+    }
+
+    public void testCloseCancelsPageInFlight() throws IOException
+    {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(fileSystem.getPath("/dir"));
+        Iterator<Path> entries = stream.iterator();
+        // the first page is answered, the second one it asks for is not
+        s3.holdLists();
+        assertEquals("a", entries.next().getFileName().toString());
+        assertEquals(2, s3.requests("ListObjectsV2"));
+
+        stream.close();
+        assertFalse(entries.hasNext());
+        s3.releaseLists();
+        // answered after the second one, which by then has been dealt with
+        try (DirectoryStream<Path> other = Files.newDirectoryStream(fileSystem.getPath("/dir/c"))) {
+            assertEquals("x", other.iterator().next().getFileName().toString());
+        }
+        assertEquals(1, s3.requests("ListObjectsV2Aborted"));
+        assertEquals(3, s3.requests("ListObjectsV2"));
+    }
+}
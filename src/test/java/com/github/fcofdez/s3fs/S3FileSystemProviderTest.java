@@ -0,0 +1,175 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class S3FileSystemProviderTest extends TestCase
+{
+    private static final int PART_SIZE = S3FSSettings.MIN_MULTIPART_PART_SIZE;
+
+    private final Random random = new Random(42);
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setCopyPartSize(PART_SIZE)
+                                                  .setCopyParallelism(1)
+                                                  .createS3FSSettings());
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testMoveOntoItselfKeepsObject() throws IOException
+    {
+        byte[] data = put("dir/data.bin", 2 * PART_SIZE);
+        Path path = fileSystem.getPath("/dir/data.bin");
+
+        Files.move(path, fileSystem.getPath("dir", "data.bin"), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(path, path, StandardCopyOption.REPLACE_EXISTING);
+
+        assertTrue(Arrays.equals(data, s3.get("dir/data.bin")));
+        assertEquals(0, s3.requests("CreateMultipartUpload"));
+        assertEquals(0, s3.requests("DeleteObject"));
+    }
+
+    public void testMove() throws IOException
+    {
+        byte[] data = put("a.bin", 100);
+        Files.move(fileSystem.getPath("/a.bin"), fileSystem.getPath("/b.bin"));
+
+        assertNull(s3.get("a.bin"));
+        assertTrue(Arrays.equals(data, s3.get("b.bin")));
+    }
+
+    public void testIsSameFile() throws IOException
+    {
+        assertTrue(Files.isSameFile(fileSystem.getPath("/dir/a"), fileSystem.getPath("dir", "a")));
+        assertFalse(Files.isSameFile(fileSystem.getPath("/dir/a"), fileSystem.getPath("/dir/b")));
+    }
+
+    public void testFailedPartStopsCopy() throws IOException
+    {
+        put("data.bin", 4 * PART_SIZE);
+        s3.failPart(1);
+
+        try {
+            Files.copy(fileSystem.getPath("/data.bin"), fileSystem.getPath("/copy.bin"));
+            fail();
+        } catch (IOException expected) {
+        }
+        // one part at a time, the rest are never issued
+        assertEquals(1, s3.requests("UploadPartCopy"));
+        assertNull(s3.get("copy.bin"));
+    }
+
+    public void testDeleteEmptyDirectoryRemovesMarker() throws IOException
+    {
+        s3.put("dir/", new byte[0]);
+        put("dirx", 10);
+
+        Files.delete(fileSystem.getPath("/dir"));
+        assertNull(s3.get("dir/"));
+        assertNotNull(s3.get("dirx"));
+    }
+
+    public void testDeleteNonEmptyDirectoryFails() throws IOException
+    {
+        s3.put("dir/", new byte[0]);
+        put("dir/a", 10);
+        try {
+            Files.delete(fileSystem.getPath("/dir"));
+            fail();
+        } catch (DirectoryNotEmptyException expected) {
+        }
+        assertNotNull(s3.get("dir/"));
+    }
+
+    public void testDeleteMissingFails() throws IOException
+    {
+        put("dirx", 10);
+        try {
+            Files.delete(fileSystem.getPath("/dir"));
+            fail();
+        } catch (NoSuchFileException expected) {
+        }
+    }
+
+    public void testListedAttributesExpireWithCache() throws IOException
+    {
+        put("dir/a", 10);
+        Path listed;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fileSystem.getPath("/dir"))) {
+            listed = stream.iterator().next();
+        }
+        assertEquals(10, Files.size(listed));
+        assertEquals(0, s3.requests("HeadObject"));
+
+        // the listing's entry expires and the object changes
+        put("dir/a", 20);
+        fileSystem.getMetadataCache().invalidate(InMemoryS3.BUCKET, "dir/a");
+        assertEquals(20, Files.size(listed));
+        assertEquals(1, s3.requests("HeadObject"));
+    }
+
+    public void testNewFileSystemOfOpenBucketFails() throws IOException
+    {
+        S3FileSystemProvider provider = new S3FileSystemProvider();
+        URI uri = URI.create("s3://other-bucket/");
+        Map<String, String> env = new HashMap<>();
+        env.put(S3FSSettings.REGION, "us-east-1");
+        env.put(S3FSSettings.ACCESS_KEY, "access");
+        env.put(S3FSSettings.SECRET_KEY, "secret");
+
+        try {
+            provider.getFileSystem(uri);
+            fail();
+        } catch (FileSystemNotFoundException expected) {
+        }
+
+        FileSystem created = provider.newFileSystem(uri, env);
+        try {
+            assertSame(created, provider.getFileSystem(URI.create("s3://other-bucket/some/key")));
+            try {
+                provider.newFileSystem(URI.create("s3://other-bucket/some/key"), env);
+                fail();
+            } catch (FileSystemAlreadyExistsException expected) {
+            }
+        } finally {
+            created.close();
+        }
+
+        // closing makes room for a new one
+        provider.newFileSystem(uri, env).close();
+    }
+
+    private byte[] put(String key, int size)
+    {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        s3.put(key, data);
+        return data;
+    }
+}
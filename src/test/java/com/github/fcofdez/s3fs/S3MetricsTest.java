@@ -0,0 +1,50 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.util.concurrent.TimeUnit;
+
+public class S3MetricsTest extends TestCase
+{
+    public void testOperations()
+    {
+        assertEquals(S3Metrics.Operation.GET, S3Metrics.Operation.of(GetObjectRequest.builder().build()));
+        assertEquals(S3Metrics.Operation.LIST, S3Metrics.Operation.of(ListObjectsV2Request.builder().build()));
+        assertEquals(S3Metrics.Operation.PUT, S3Metrics.Operation.of(UploadPartRequest.builder().build()));
+        assertEquals(S3Metrics.Operation.OTHER, S3Metrics.Operation.of(CompleteMultipartUploadRequest.builder().build()));
+    }
+
+    public void testRequests()
+    {
+        S3Metrics metrics = new S3Metrics(null, new MetadataCache(1000, 10));
+        metrics.requestStarted();
+        metrics.requestStarted();
+        assertEquals(2, metrics.getInFlightRequests());
+
+        metrics.requestFinished(S3Metrics.Operation.GET, TimeUnit.MILLISECONDS.toNanos(10), false);
+        metrics.requestFinished(S3Metrics.Operation.HEAD, TimeUnit.MILLISECONDS.toNanos(1), true);
+        assertEquals(0, metrics.getInFlightRequests());
+        assertEquals(2, metrics.getRequestCount());
+        assertEquals(1, metrics.getFailedRequestCount());
+        assertEquals(1, metrics.getFailedRequestCount(S3Metrics.Operation.HEAD));
+        assertEquals(Long.valueOf(1), metrics.getRequestCountByOperation().get("GET"));
+        assertTrue(metrics.getP99LatencyMillisByOperation().get("GET") >= 10);
+    }
+
+    public void testCacheRatios()
+    {
+        MetadataCache cache = new MetadataCache(1000, 10);
+        S3Metrics metrics = new S3Metrics(null, cache);
+        assertTrue(Double.isNaN(metrics.getMetadataCacheHitRatio()));
+        assertTrue(Double.isNaN(metrics.getBlockCacheHitRatio()));
+
+        cache.put("bucket", "key", new S3ObjectMetadata(1, "etag", null, null));
+        cache.get("bucket", "key");
+        cache.get("bucket", "missing");
+        assertEquals(0.5, metrics.getMetadataCacheHitRatio(), 1e-9);
+    }
+}
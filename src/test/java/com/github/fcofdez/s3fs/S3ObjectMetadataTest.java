@@ -0,0 +1,20 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+public class S3ObjectMetadataTest extends TestCase
+{
+    public void testTotalLengthFromContentRange()
+    {
+        assertEquals(5000123, S3ObjectMetadata.totalLength("bytes 0-65535/5000123"));
+        assertEquals(0, S3ObjectMetadata.totalLength("bytes */0"));
+    }
+
+    public void testUnknownTotalLength()
+    {
+        assertEquals(-1, S3ObjectMetadata.totalLength(null));
+        assertEquals(-1, S3ObjectMetadata.totalLength("bytes 0-10/*"));
+        assertEquals(-1, S3ObjectMetadata.totalLength("bytes 0-10/"));
+        assertEquals(-1, S3ObjectMetadata.totalLength("garbage"));
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+
+public class S3PathTest extends TestCase
+{
+    public void testKeysCompareInUtf8Order()
+    {
+        String[] keys = {"", "a", "a/b", "a0", "ab", "\u00e9", "\ue000", "\uffff", "\ud83d\ude00", "\ud83d\ude00x"};
+        for (String key : keys) {
+            for (String other : keys) {
+                assertEquals(key + " vs " + other, Integer.signum(compareUtf8(key, other)),
+                             Integer.signum(S3Path.compareKeys(key, other)));
+            }
+        }
+    }
+
+    private static int compareUtf8(String key, String other)
+    {
+        byte[] a = key.getBytes(StandardCharsets.UTF_8);
+        byte[] b = other.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i])
+                return (a[i] & 0xff) - (b[i] & 0xff);
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,326 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.Random;
+
+public class S3SeekableByteChannelTest extends TestCase
+{
+    private final Random random = new Random(42);
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setCacheCapacity(0)
+                                                  .setMinReadahead(4096)
+                                                  .setMaxReadahead(4096)
+                                                  .setMaxStreamSkip(0)
+                                                  .createS3FSSettings());
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testGetsArePinnedToVersion() throws IOException
+    {
+        byte[] data = put("data.bin", 100_000);
+        try (SeekableByteChannel channel = open("data.bin")) {
+            channel.read(ByteBuffer.allocate(100));
+            channel.position(50_000).read(ByteBuffer.allocate(100));
+            assertEquals(InMemoryS3.eTag(data), s3.lastGet().ifMatch());
+        }
+    }
+
+    public void testStaleCachedVersionIsReplacedBeforeAnyRead() throws IOException
+    {
+        byte[] data = put("data.bin", 100_000);
+        fileSystem.getMetadataCache().put(InMemoryS3.BUCKET, "data.bin", staleMetadata(100_000));
+
+        try (SeekableByteChannel channel = open("data.bin")) {
+            assertEquals(ByteBuffer.wrap(data), readFully(channel, data.length));
+        }
+        assertEquals(InMemoryS3.eTag(data), fileSystem.getMetadataCache().get(InMemoryS3.BUCKET, "data.bin").eTag());
+    }
+
+    public void testStaleCachedSizeIsCheckedAtEnd() throws IOException
+    {
+        byte[] data = put("data.bin", 100_000);
+        fileSystem.getMetadataCache().put(InMemoryS3.BUCKET, "data.bin", staleMetadata(10));
+
+        try (SeekableByteChannel channel = open("data.bin")) {
+            channel.position(10);
+            assertEquals(100, channel.read(ByteBuffer.allocate(100)));
+            assertEquals(data.length, channel.size());
+        }
+    }
+
+    public void testReplacedWhileReadingFails() throws IOException
+    {
+        put("data.bin", 100_000);
+        try (SeekableByteChannel channel = open("data.bin")) {
+            channel.read(ByteBuffer.allocate(100));
+            byte[] replacement = put("data.bin", 100_000);
+
+            try {
+                channel.position(50_000).read(ByteBuffer.allocate(100));
+                fail("bytes of two versions must not be mixed");
+            } catch (IOException expected) {
+            }
+            // what was learnt about the old version is gone
+            assertNull(fileSystem.getMetadataCache().get(InMemoryS3.BUCKET, "data.bin"));
+
+            try (SeekableByteChannel reopened = open("data.bin")) {
+                assertEquals(ByteBuffer.wrap(replacement), readFully(reopened, replacement.length));
+            }
+        }
+    }
+
+    public void testMissingObjectIsNoSuchFile() throws IOException
+    {
+        try (SeekableByteChannel channel = Files.newByteChannel(fileSystem.getPath("/missing"))) {
+            try {
+                channel.read(ByteBuffer.allocate(10));
+                fail();
+            } catch (NoSuchFileException expected) {
+            }
+            try {
+                channel.size();
+                fail();
+            } catch (NoSuchFileException expected) {
+            }
+        }
+    }
+
+    public void testMoreReadersThanThePoolHoldsDoNotHang() throws IOException
+    {
+        fileSystem.close();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setCacheCapacity(0)
+                                                  .setMinReadahead(S3FSSettings.DEFAULT_MAX_READAHEAD)
+                                                  .setBufferPoolCapacity(S3FSSettings.DEFAULT_MAX_READAHEAD)
+                                                  .createS3FSSettings());
+        byte[] data = put("data.bin", 1000);
+
+        // the pool holds a single fill buffer, a drained one goes back to it while its channel stays open
+        try (SeekableByteChannel first = open("data.bin"); SeekableByteChannel second = open("data.bin")) {
+            assertEquals(ByteBuffer.wrap(data), readFully(first, data.length));
+            assertEquals(0, fileSystem.getBufferPool().getUsedBytes());
+            assertEquals(ByteBuffer.wrap(data), readFully(second, data.length));
+        }
+        assertEquals(0, fileSystem.getBufferPool().getWaitCount());
+        assertEquals(0, fileSystem.getBufferPool().getUsedBytes());
+    }
+
+    public void testReadaheadGrowsOnSequentialReadsAndResetsOnSeek() throws IOException
+    {
+        fileSystem.close();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setCacheCapacity(0)
+                                                  .setMinReadahead(4096)
+                                                  .setMaxReadahead(16384)
+                                                  .setMaxStreamSkip(0)
+                                                  .createS3FSSettings());
+        byte[] data = put("data.bin", 100_000);
+        S3Metrics metrics = fileSystem.getMetrics();
+
+        try (SeekableByteChannel channel = open("data.bin")) {
+            // each refill one byte in, after draining the previous one, fetches twice as much up to the max
+            int[] windows = {4096, 8192, 16384, 16384};
+            long fetched = 0;
+            for (int window : windows) {
+                assertEquals(ByteBuffer.wrap(data, (int) fetched, 1), read(channel, 1));
+                fetched += window;
+                assertEquals(fetched, metrics.getBytesRead());
+                read(channel, window - 1);
+            }
+
+            // a random read drops back to the smallest window
+            channel.position(80_000);
+            assertEquals(ByteBuffer.wrap(data, 80_000, 1), read(channel, 1));
+            assertEquals("bytes=80000-84095", s3.lastGet().range());
+        }
+    }
+
+    public void testSequentialReadsShareOneGet() throws IOException
+    {
+        byte[] data = put("data.bin", 100_000);
+        try (SeekableByteChannel channel = open("data.bin")) {
+            ByteBuffer all = ByteBuffer.allocate(data.length);
+            while (all.hasRemaining()) {
+                ByteBuffer chunk = ByteBuffer.allocate(Math.min(1000, all.remaining()));
+                channel.read(chunk);
+                all.put((ByteBuffer) chunk.flip());
+            }
+            assertEquals(ByteBuffer.wrap(data), (ByteBuffer) all.flip());
+        }
+        // the first read may be a random one and gets a window, the rest streams
+        assertEquals(2, s3.requests("GetObject"));
+        assertEquals("bytes=4096-", s3.lastGet().range());
+    }
+
+    public void testShortSkipReusesStreamAndFarSkipReopens() throws IOException
+    {
+        fileSystem.close();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setCacheCapacity(0)
+                                                  .setMinReadahead(4096)
+                                                  .setMaxReadahead(4096)
+                                                  .setMaxStreamSkip(8192)
+                                                  .createS3FSSettings());
+        byte[] data = put("data.bin", 100_000);
+
+        try (SeekableByteChannel channel = open("data.bin")) {
+            // a window, then the stream from where it ends
+            read(channel, 4096);
+            assertEquals(ByteBuffer.wrap(data, 4096, 100), read(channel, 100));
+            assertEquals(2, s3.requests("GetObject"));
+            assertEquals("bytes=4096-", s3.lastGet().range());
+
+            // the stream is at 8192, 5000 bytes further is skipped on it
+            channel.position(13_192);
+            assertEquals(ByteBuffer.wrap(data, 13_192, 100), read(channel, 100));
+            assertEquals(2, s3.requests("GetObject"));
+
+            // the stream is at 17288, 20000 bytes further is past max_stream_skip
+            channel.position(37_288);
+            assertEquals(ByteBuffer.wrap(data, 37_288, 100), read(channel, 100));
+            assertEquals(3, s3.requests("GetObject"));
+            assertEquals("bytes=37288-41383", s3.lastGet().range());
+
+            // reading on from there opens a new stream
+            read(channel, 3996);
+            assertEquals(ByteBuffer.wrap(data, 41_384, 100), read(channel, 100));
+            assertEquals(4, s3.requests("GetObject"));
+            assertEquals("bytes=41384-", s3.lastGet().range());
+        }
+    }
+
+    public void testDroppedStreamIsReopenedWhereItFailed() throws IOException
+    {
+        byte[] data = put("data.bin", 100_000);
+        S3Metrics metrics = fileSystem.getMetrics();
+        try (SeekableByteChannel channel = open("data.bin")) {
+            read(channel, 4096);
+            s3.dropNextStream(1000);
+            assertEquals(ByteBuffer.wrap(data, 4096, 4096), read(channel, 4096));
+        }
+        assertEquals(3, s3.requests("GetObject"));
+        assertEquals("bytes=5096-", s3.lastGet().range());
+        // the channel's doing, not the SDK's
+        assertEquals(1, metrics.getStreamReopenCount());
+        assertEquals(0, metrics.getRetryCount());
+    }
+
+    public void testPrefetchKeepsAtMostParallelismBlocksInFlight() throws IOException
+    {
+        int blockSize = 64 * 1024;
+        fileSystem.close();
+        // closing the filesystem closed the async client too
+        s3 = new InMemoryS3();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setCacheCapacity(0)
+                                                  .setMinReadahead(4096)
+                                                  .setMaxReadahead(4096)
+                                                  .setPrefetchParallelism(3)
+                                                  .setPrefetchBlockSize(blockSize)
+                                                  .createS3FSSettings());
+        byte[] data = put("data.bin", 10 * blockSize);
+
+        try (SeekableByteChannel channel = open("data.bin")) {
+            // a window, then the sequential reader is handed blocks from there on
+            read(channel, 4096);
+            for (int position = 4096; position < data.length; position += 1000) {
+                ByteBuffer chunk = ByteBuffer.allocate(Math.min(1000, data.length - position));
+                // a block ends half way through some chunks
+                while (chunk.hasRemaining()) {
+                    channel.read(chunk);
+                }
+                int length = chunk.position();
+                assertEquals(ByteBuffer.wrap(data, position, length), (ByteBuffer) chunk.flip());
+
+                // the block being read and the two after it, never more
+                int block = (position + length - 1) / blockSize;
+                assertTrue(s3.requests("AsyncGetObject") <= Math.min(block + 3, 10));
+                assertTrue(fileSystem.getBufferPool().getUsedBytes() <= 3 * blockSize);
+            }
+        }
+        assertEquals(10, s3.requests("AsyncGetObject"));
+    }
+
+    public void testSeekInsideBufferIssuesNoGet() throws IOException
+    {
+        byte[] data = put("data.bin", 100_000);
+        try (SeekableByteChannel channel = open("data.bin")) {
+            assertEquals(ByteBuffer.wrap(data, 0, 100), read(channel, 100));
+            assertEquals(1, s3.requests("GetObject"));
+
+            // forwards, backwards and up to the end of the window, all out of the buffer
+            channel.position(3000);
+            assertEquals(ByteBuffer.wrap(data, 3000, 100), read(channel, 100));
+            channel.position(10);
+            assertEquals(ByteBuffer.wrap(data, 10, 100), read(channel, 100));
+            channel.position(4000);
+            assertEquals(ByteBuffer.wrap(data, 4000, 50), read(channel, 50));
+            assertEquals(1, s3.requests("GetObject"));
+
+            // outside it is another GET
+            channel.position(50_000);
+            assertEquals(ByteBuffer.wrap(data, 50_000, 100), read(channel, 100));
+            assertEquals(2, s3.requests("GetObject"));
+        }
+    }
+
+    private byte[] put(String key, int size)
+    {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        s3.put(key, data);
+        return data;
+    }
+
+    private SeekableByteChannel open(String key) throws IOException
+    {
+        return Files.newByteChannel(fileSystem.getPath("/" + key));
+    }
+
+    private static S3ObjectMetadata staleMetadata(long size)
+    {
+        return new S3ObjectMetadata(size, "\"stale\"", Instant.EPOCH, null);
+    }
+
+    /**
+     * Reads {@code length} bytes, all of them served by a single call.
+     */
+    private static ByteBuffer read(SeekableByteChannel channel, int length) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        assertEquals(length, channel.read(bytes));
+        bytes.flip();
+        return bytes;
+    }
+
+    private static ByteBuffer readFully(SeekableByteChannel channel, int length) throws IOException
+    {
+        ByteBuffer all = ByteBuffer.allocate(length);
+        while (all.hasRemaining()) {
+            if (channel.read(all) < 0)
+                break;
+        }
+        assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        all.flip();
+        return all;
+    }
+}
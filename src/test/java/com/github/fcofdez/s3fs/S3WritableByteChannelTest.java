@@ -0,0 +1,126 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+public class S3WritableByteChannelTest extends TestCase
+{
+    private static final int PART_SIZE = S3FSSettings.MIN_MULTIPART_PART_SIZE;
+
+    private final Random random = new Random(42);
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+    private Path path;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setMultipartPartSize(PART_SIZE)
+                                                  .setUploadParallelism(2)
+                                                  .createS3FSSettings());
+        path = fileSystem.getPath("/data.bin");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testSmallObjectIsPut() throws IOException
+    {
+        byte[] data = bytes(1000);
+        try (SeekableByteChannel channel = open()) {
+            assertEquals(data.length, channel.write(ByteBuffer.wrap(data)));
+            // nothing is visible before close
+            assertNull(s3.get("data.bin"));
+        }
+
+        assertTrue(Arrays.equals(data, s3.get("data.bin")));
+        assertEquals(1, s3.requests("PutObject"));
+        assertEquals(0, s3.requests("CreateMultipartUpload"));
+    }
+
+    public void testLargeObjectIsUploadedInParts() throws IOException
+    {
+        byte[] data = bytes(2 * PART_SIZE + 1000);
+        try (SeekableByteChannel channel = open()) {
+            // in uneven writes that straddle parts
+            for (int offset = 0; offset < data.length; offset += 1_000_000)
+                channel.write(ByteBuffer.wrap(data, offset, Math.min(1_000_000, data.length - offset)));
+            assertEquals(data.length, channel.position());
+        }
+
+        assertTrue(Arrays.equals(data, s3.get("data.bin")));
+        assertEquals(3, s3.requests("UploadPart"));
+        assertEquals(1, s3.requests("CompleteMultipartUpload"));
+        assertEquals(0, s3.pendingUploads());
+        assertEquals(0, fileSystem.getBufferPool().getUsedBytes());
+    }
+
+    public void testFailedPartAbortsUpload() throws IOException
+    {
+        s3.failPart(2);
+        IOException error = writeFailing(bytes(3 * PART_SIZE));
+
+        assertEquals(0, error.getSuppressed().length);
+        assertNull(s3.get("data.bin"));
+        assertEquals(1, s3.requests("AbortMultipartUpload"));
+        assertEquals(0, s3.pendingUploads());
+        assertEquals(0, fileSystem.getBufferPool().getUsedBytes());
+    }
+
+    public void testFailedAbortIsReported() throws IOException
+    {
+        s3.failPart(1);
+        s3.failAbort();
+        IOException error = writeFailing(bytes(2 * PART_SIZE));
+
+        assertEquals(1, error.getSuppressed().length);
+        assertEquals(1, s3.pendingUploads());
+    }
+
+    /**
+     * Writes {@code data} and closes the channel, returning what close threw. A failed part may be reported by a
+     * write already, close reports it again.
+     */
+    private IOException writeFailing(byte[] data) throws IOException
+    {
+        SeekableByteChannel channel = open();
+        try {
+            channel.write(ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            // reported early
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            return e;
+        }
+        fail("the upload must fail");
+        return null;
+    }
+
+    private SeekableByteChannel open() throws IOException
+    {
+        return Files.newByteChannel(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+
+    private byte[] bytes(int size)
+    {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
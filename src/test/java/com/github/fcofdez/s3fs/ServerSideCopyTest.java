@@ -0,0 +1,97 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class ServerSideCopyTest extends TestCase
+{
+    private static final int PART_SIZE = S3FSSettings.MIN_MULTIPART_PART_SIZE;
+
+    private InMemoryS3 s3;
+    private S3FileSystem fileSystem;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        s3 = new InMemoryS3();
+        fileSystem = s3.newFileSystem(S3FSSettings.builder()
+                                                  .setCopyPartSize(PART_SIZE)
+                                                  .setCopyParallelism(2)
+                                                  .createS3FSSettings());
+        byte[] data = new byte[3 * PART_SIZE];
+        new Random(42).nextBytes(data);
+        s3.put("data.bin", data);
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    public void testCopySourceKeepsSlashes()
+    {
+        assertEquals("bucket/a/b/c.txt", ServerSideCopy.copySource("bucket", "a/b/c.txt"));
+    }
+
+    public void testCopySourceEncodesSpecialCharacters()
+    {
+        assertEquals("bucket/dir%20x/a%2Bb%3Fc%C3%A9", ServerSideCopy.copySource("bucket", "dir x/a+b?c\u00e9"));
+    }
+
+    public void testFailedPartLeavesNoUpload() throws IOException
+    {
+        s3.failPart(2);
+        IOException error = copyFailing();
+
+        assertEquals(0, error.getSuppressed().length);
+        assertEquals(1, s3.requests("AbortMultipartUpload"));
+        assertEquals(0, s3.pendingUploads());
+        assertNull(s3.get("copy.bin"));
+    }
+
+    public void testFailedAbortIsReported() throws IOException
+    {
+        s3.failPart(1);
+        s3.failAbort();
+        IOException error = copyFailing();
+
+        assertEquals(1, error.getSuppressed().length);
+        assertEquals(1, s3.pendingUploads());
+    }
+
+    public void testTargetRequestsGoToTargetClient() throws IOException
+    {
+        // the target bucket behind other clients, as when it's in another region
+        InMemoryS3 targetS3 = new InMemoryS3();
+        targetS3.put("data.bin", s3.get("data.bin"));
+        try (S3FileSystem target = targetS3.newFileSystem(S3FSSettings.builder()
+                                                                       .setCopyPartSize(PART_SIZE)
+                                                                       .createS3FSSettings())) {
+            // each test filesystem has a provider of its own, Files.copy would take them for foreign
+            fileSystem.provider().copy(fileSystem.getPath("/data.bin"), target.getPath("/copy.bin"));
+        }
+
+        assertEquals(1, s3.requests("HeadObject"));
+        assertEquals(0, s3.requests("CreateMultipartUpload"));
+        assertEquals(0, s3.requests("UploadPartCopy"));
+        assertEquals(1, targetS3.requests("CreateMultipartUpload"));
+        assertEquals(3, targetS3.requests("UploadPartCopy"));
+        assertEquals(1, targetS3.requests("CompleteMultipartUpload"));
+        assertNotNull(targetS3.get("copy.bin"));
+    }
+
+    private IOException copyFailing() throws IOException
+    {
+        try {
+            Files.copy(fileSystem.getPath("/data.bin"), fileSystem.getPath("/copy.bin"));
+        } catch (IOException e) {
+            return e;
+        }
+        fail("the copy must fail");
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+public class UnixPathTest extends TestCase
+{
+    public void testNames()
+    {
+        UnixPath path = path("/year=2019//month=10/part-0.parquet");
+        assertEquals(3, path.getNameCount());
+        assertEquals("year=2019", path.getName(0).toString());
+        assertEquals("month=10", path.getName(1).toString());
+        assertEquals("part-0.parquet", path.getFileName().toString());
+        assertEquals("month=10/part-0.parquet", path.subpath(1, 3).toString());
+
+        assertEquals(0, path("/").getNameCount());
+        assertNull(path("/").getFileName());
+        assertEquals(1, path("").getNameCount());
+        assertEquals(2, path("a/b/").getNameCount());
+        assertEquals("b", path("a/b/").getFileName().toString());
+    }
+
+    public void testStartsAndEndsWith()
+    {
+        UnixPath path = path("/a/bc/d");
+        assertTrue(path.startsWith(path("/a/bc")));
+        assertTrue(path.startsWith(path("/a//bc/")));
+        assertTrue(path.startsWith(path("/")));
+        assertFalse(path.startsWith(path("/a/b")));
+        assertFalse(path.startsWith(path("a")));
+
+        assertTrue(path.endsWith(path("bc/d")));
+        assertTrue(path.endsWith(path("/a/bc/d")));
+        assertFalse(path.endsWith(path("c/d")));
+        assertFalse(path.endsWith(path("/bc/d")));
+        assertFalse(path("a/bc/d").endsWith(path("/a/bc/d")));
+    }
+
+    public void testRelativize()
+    {
+        assertEquals("c/d", path("/a/b").relativize(path("/a/b/c/d")).toString());
+        assertEquals("../../x", path("/a/b/c").relativize(path("/a/x")).toString());
+        assertEquals("", path("/a/b").relativize(path("/a/b/")).toString());
+        assertEquals("..", path("a/b").relativize(path("a")).toString());
+        try {
+            path("/a").relativize(path("a"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNormalize()
+    {
+        UnixPath normal = path("/a/b/c/");
+        assertSame(normal, normal.normalize());
+        assertEquals("/adasd/asd/", path("/adasd/./asd/aasd/../").normalize().toString());
+        assertEquals("/a/b", path("/a//b").normalize().toString());
+        assertEquals("/b", path("/../b").normalize().toString());
+        assertEquals("../b", path("a/../../b").normalize().toString());
+        assertEquals("", path("a/..").normalize().toString());
+    }
+
+    private static UnixPath path(String path)
+    {
+        return UnixPath.createPath(path);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.fcofdez.s3fs;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+public class VectoredReadTest extends TestCase
+{
+    public void testMergesRangesWithinGap()
+    {
+        List<VectoredRead.CombinedRange> combined = VectoredRead.coalesce(
+                Arrays.asList(FileRange.of(100, 10), FileRange.of(0, 50), FileRange.of(1000, 10)), 50, 1 << 20);
+
+        assertEquals(2, combined.size());
+        assertEquals(0, combined.get(0).offset);
+        assertEquals(110, combined.get(0).length());
+        assertEquals(2, combined.get(0).ranges().size());
+        assertEquals(1000, combined.get(1).offset);
+        assertEquals(10, combined.get(1).length());
+    }
+
+    public void testSplitsWhenMergedSizeIsExceeded()
+    {
+        List<VectoredRead.CombinedRange> combined = VectoredRead.coalesce(
+                Arrays.asList(FileRange.of(0, 60), FileRange.of(60, 60), FileRange.of(120, 60)), 0, 128);
+
+        assertEquals(2, combined.size());
+        assertEquals(120, combined.get(0).length());
+        assertEquals(120, combined.get(1).offset);
+    }
+
+    public void testRejectsOverlappingRanges()
+    {
+        try {
+            VectoredRead.coalesce(Arrays.asList(FileRange.of(0, 100), FileRange.of(50, 10)), 0, 1 << 20);
+            fail("overlapping ranges must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testOverlapIsRejectedBeforeAnyRangeCompletes() throws IOException
+    {
+        InMemoryS3 s3 = new InMemoryS3();
+        try (S3FileSystem fileSystem = s3.newFileSystem(S3FSSettings.builder().createS3FSSettings())) {
+            VectoredRead read = new VectoredRead(new RangeFetcher(fileSystem, InMemoryS3.BUCKET, "key"), 0, 1 << 20);
+            // an empty range and one past the end would otherwise complete before the overlap is found
+            List<FileRange> ranges = Arrays.asList(FileRange.of(0, 0), FileRange.of(2000, 10), FileRange.of(0, 100),
+                                                   FileRange.of(50, 10));
+            try {
+                read.read(ranges, 1000, ByteBuffer::allocate);
+                fail("overlapping ranges must be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+
+            for (FileRange range : ranges)
+                assertFalse(range.getData().isDone());
+            assertEquals(0, s3.requests("GetObject"));
+        }
+    }
+}